@@ -0,0 +1,98 @@
+package mrearsbig.cashcard;
+
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+/**
+ * Compares a plain BCrypt-backed Basic auth check with the cached one, both in
+ * isolation and end to end through {@code GET /cashcards/{id}}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class AuthenticationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Providers {
+        AuthenticationProvider bcrypt;
+        AuthenticationProvider cached;
+
+        @Setup
+        public void setUp() {
+            BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+            InMemoryUserDetailsManager users = new InMemoryUserDetailsManager(User.builder()
+                    .username("sarah1")
+                    .password(passwordEncoder.encode("abc123"))
+                    .roles("CARD-OWNER")
+                    .build());
+
+            DaoAuthenticationProvider daoAuthenticationProvider = new DaoAuthenticationProvider(users);
+            daoAuthenticationProvider.setPasswordEncoder(passwordEncoder);
+
+            bcrypt = daoAuthenticationProvider;
+            cached = new CachingAuthenticationProvider(daoAuthenticationProvider, users, 10_000,
+                    Duration.ofMinutes(5));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({ "true", "false" })
+        public boolean authCacheEnabled;
+
+        CashCardServer server;
+        HttpRequest findById;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            server = new CashCardServer("cashcard.security.auth-cache.enabled=" + authCacheEnabled);
+            String location = server.createCashCard("sarah1", "abc123", "123.45");
+            findById = server.request(location, "sarah1", "abc123").GET().build();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public Authentication bcryptProvider(Providers providers) {
+        return providers.bcrypt.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated("sarah1", "abc123"));
+    }
+
+    @Benchmark
+    public Authentication cachingProvider(Providers providers) {
+        return providers.cached.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated("sarah1", "abc123"));
+    }
+
+    @Benchmark
+    public int findById(Server server) {
+        return server.server.send(server.findById).statusCode();
+    }
+}
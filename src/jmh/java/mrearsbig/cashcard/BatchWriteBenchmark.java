@@ -0,0 +1,65 @@
+package mrearsbig.cashcard;
+
+import java.net.http.HttpRequest;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creates 10k cash cards either with 10k single {@code POST /cashcards} calls or
+ * with one {@code POST /cashcards/batch} call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BatchWriteBenchmark {
+    private static final int CARDS = 10_000;
+
+    private CashCardServer server;
+    private HttpRequest batchRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new CashCardServer();
+
+        StringJoiner body = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < CARDS; i++) {
+            body.add("{\"amount\": " + (i % 1000) + ".25}");
+        }
+        batchRequest = server.request("/cashcards/batch", "sarah1", "abc123")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public void singleCalls() {
+        for (int i = 0; i < CARDS; i++) {
+            server.createCashCard("sarah1", "abc123", (i % 1000) + ".25");
+        }
+    }
+
+    @Benchmark
+    public int batchCall() {
+        return server.send(batchRequest).statusCode();
+    }
+}
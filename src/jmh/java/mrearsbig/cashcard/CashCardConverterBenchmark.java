@@ -0,0 +1,108 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+/**
+ * Response body writing through {@link CashCardHttpMessageConverter} versus the
+ * Jackson converter it replaces. Run with {@code -PjmhProfilers=gc} to get the
+ * allocated bytes per operation ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardConverterBenchmark {
+    private static final Type CASH_CARD_LIST = new ParameterizedTypeReference<List<CashCard>>() {
+    }.getType();
+
+    @Param({ "1", "20", "1000" })
+    public int cards;
+
+    private GenericHttpMessageConverter<Object> jackson;
+    private GenericHttpMessageConverter<Object> cashCardConverter;
+    private CashCard cashCard;
+    private List<CashCard> page;
+    private DiscardingOutputMessage outputMessage;
+
+    @Setup
+    public void setUp() {
+        jackson = new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+        cashCardConverter = new CashCardHttpMessageConverter();
+        cashCard = new CashCard(99L, new BigDecimal("123.45"), "sarah1", 3L);
+        page = new ArrayList<>();
+        for (long id = 1; id <= cards; id++) {
+            page.add(new CashCard(id, BigDecimal.valueOf(id * 7919, 2), "sarah1", 0L));
+        }
+        outputMessage = new DiscardingOutputMessage();
+    }
+
+    @Benchmark
+    public void jacksonCashCard() throws IOException {
+        jackson.write(cashCard, CashCard.class, MediaType.APPLICATION_JSON, outputMessage.reset());
+    }
+
+    @Benchmark
+    public void converterCashCard() throws IOException {
+        cashCardConverter.write(cashCard, CashCard.class, MediaType.APPLICATION_JSON, outputMessage.reset());
+    }
+
+    @Benchmark
+    public void jacksonList() throws IOException {
+        jackson.write(page, CASH_CARD_LIST, MediaType.APPLICATION_JSON, outputMessage.reset());
+    }
+
+    @Benchmark
+    public void converterList() throws IOException {
+        cashCardConverter.write(page, CASH_CARD_LIST, MediaType.APPLICATION_JSON, outputMessage.reset());
+    }
+
+    /**
+     * Reused across invocations so only the converter's own allocations are
+     * measured; the bytes written are discarded.
+     */
+    private static final class DiscardingOutputMessage implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final OutputStream body = OutputStream.nullOutputStream();
+
+        DiscardingOutputMessage reset() {
+            headers.clear();
+            return this;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
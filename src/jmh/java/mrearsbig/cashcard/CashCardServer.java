@@ -0,0 +1,72 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Boots the application on a random port so benchmarks can drive it over real
+ * HTTP, the same way clients do.
+ */
+class CashCardServer implements AutoCloseable {
+    private final ConfigurableApplicationContext context;
+    private final HttpClient httpClient;
+    private final String baseUrl;
+
+    CashCardServer(String... properties) {
+        List<String> allProperties = new ArrayList<>(List.of("server.port=0", "logging.level.root=WARN"));
+        allProperties.addAll(List.of(properties));
+
+        this.context = new SpringApplicationBuilder(CashCardApplication.class)
+                .properties(allProperties.toArray(String[]::new))
+                .run();
+        this.httpClient = HttpClient.newHttpClient();
+        this.baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    ConfigurableApplicationContext context() {
+        return context;
+    }
+
+    HttpRequest.Builder request(String path, String username, String password) {
+        String credentials = Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", "Basic " + credentials);
+    }
+
+    HttpResponse<String> send(HttpRequest request) {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            throw new IllegalStateException("Request to " + request.uri() + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Request to " + request.uri() + " was interrupted", e);
+        }
+    }
+
+    String createCashCard(String username, String password, String amount) {
+        HttpResponse<String> response = send(request("/cashcards", username, password)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"amount\": " + amount + "}"))
+                .build());
+        if (response.statusCode() != 201) {
+            throw new IllegalStateException("Unexpected status creating cash card: " + response.statusCode());
+        }
+        return URI.create(response.headers().firstValue("Location").orElseThrow()).getPath();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
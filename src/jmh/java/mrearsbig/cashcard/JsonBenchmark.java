@@ -0,0 +1,82 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * JSON serialization and deserialization of the {@link CashCard} record, single
+ * and as a 20-card list page, with an ObjectMapper configured like the
+ * application's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    private ObjectWriter cashCardWriter;
+    private ObjectWriter listWriter;
+    private ObjectReader cashCardReader;
+    private ObjectReader listReader;
+
+    private CashCard cashCard;
+    private List<CashCard> page;
+    private String cashCardJson;
+    private String pageJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        cashCardWriter = objectMapper.writerFor(CashCard.class);
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory()
+                .constructCollectionType(List.class, CashCard.class));
+        cashCardReader = objectMapper.readerFor(CashCard.class);
+        listReader = objectMapper.readerForListOf(CashCard.class);
+
+        cashCard = new CashCard(99L, new BigDecimal("123.45"), "sarah1", 3L);
+        page = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            page.add(new CashCard(id, BigDecimal.valueOf(id * 1234, 2), "sarah1", 0L));
+        }
+        cashCardJson = cashCardWriter.writeValueAsString(cashCard);
+        pageJson = listWriter.writeValueAsString(page);
+    }
+
+    @Benchmark
+    public byte[] serializeCashCard() throws JsonProcessingException {
+        return cashCardWriter.writeValueAsBytes(cashCard);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return listWriter.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public CashCard deserializeCashCard() throws JsonProcessingException {
+        return cashCardReader.readValue(cashCardJson);
+    }
+
+    @Benchmark
+    public List<CashCard> deserializePage() throws JsonProcessingException {
+        return listReader.readValue(pageJson);
+    }
+}
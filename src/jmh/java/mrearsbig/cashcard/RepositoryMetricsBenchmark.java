@@ -0,0 +1,68 @@
+package mrearsbig.cashcard;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Measures what the repository instrumentation adds to a call. The repository is
+ * a stub so that only dispatch and metric recording are timed; the difference
+ * between {@code proxied} and {@code instrumented} is the cost of the metrics
+ * and must stay below 1 µs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryMetricsBenchmark {
+    private static final CashCard CASH_CARD = new CashCard(99L, new BigDecimal("123.45"), "sarah1", 0L);
+
+    private CashCardRepository stub;
+    private CashCardRepository proxied;
+    private CashCardRepository instrumented;
+
+    @Setup
+    public void setUp() {
+        stub = (CashCardRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { CashCardRepository.class },
+                (proxy, method, args) -> method.getName().equals("findByIdAndOwner") ? CASH_CARD : null);
+
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setTarget(stub);
+        proxyFactory.addInterface(CashCardRepository.class);
+        proxied = (CashCardRepository) proxyFactory.getProxy();
+
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        instrumented = MetricsConfig.instrument(stub, () -> meterRegistry);
+    }
+
+    @Benchmark
+    public CashCard direct() {
+        return stub.findByIdAndOwner(99L, "sarah1");
+    }
+
+    @Benchmark
+    public CashCard proxied() {
+        return proxied.findByIdAndOwner(99L, "sarah1");
+    }
+
+    @Benchmark
+    public CashCard instrumented() {
+        return instrumented.findByIdAndOwner(99L, "sarah1");
+    }
+}
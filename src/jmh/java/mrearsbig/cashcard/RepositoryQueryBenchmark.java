@@ -0,0 +1,131 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * The {@link CashCardRepository} queries against 100k to 10M cards spread over
+ * 10k owners, so each owner has 10 to 1000 cards, on both storage engines: H2
+ * through Spring Data JDBC and the in-memory columnar store (without a log on
+ * disk, so only the engine itself is measured).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryQueryBenchmark {
+    private static final int OWNERS = 10_000;
+    private static final int SEED_BATCH = 100_000;
+    private static final Sort BY_AMOUNT = Sort.by(Sort.Direction.ASC, "amount");
+
+    @Param({ "100000", "1000000", "10000000" })
+    public int rows;
+
+    @Param({ "jdbc", "memory" })
+    public String storage;
+
+    private ConfigurableApplicationContext context;
+    private CashCardRepository cashCardRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(CashCardApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(storage.equals("memory") ? new String[] { "memory" } : new String[0])
+                .properties("logging.level.root=WARN", "cashcard.memory.directory=")
+                .run();
+        cashCardRepository = context.getBean(CashCardRepository.class);
+
+        // Card n belongs to owner-(n mod OWNERS), so ids and owners can be picked
+        // at random without a lookup table.
+        if (storage.equals("memory")) {
+            for (int start = 1; start <= rows; start += SEED_BATCH) {
+                List<CashCard> batch = new ArrayList<>(SEED_BATCH);
+                for (long id = start; id < start + SEED_BATCH && id <= rows; id++) {
+                    batch.add(new CashCard(id, BigDecimal.valueOf(id * 7919 % 100000, 2), owner(id)));
+                }
+                cashCardRepository.saveAll(batch);
+            }
+        } else {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            jdbcTemplate.update("""
+                    INSERT INTO cash_card (id, amount, owner)
+                    SELECT X, MOD(X * 7919, 100000) / 100.0, 'owner-' || MOD(X, %d)
+                    FROM SYSTEM_RANGE(1, %d)""".formatted(OWNERS, rows));
+            jdbcTemplate.execute("ANALYZE");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public CashCard findByIdAndOwner() {
+        long id = randomId();
+        return cashCardRepository.findByIdAndOwner(id, owner(id));
+    }
+
+    @Benchmark
+    public boolean existsByIdAndOwner() {
+        long id = randomId();
+        return cashCardRepository.existsByIdAndOwner(id, owner(id));
+    }
+
+    @Benchmark
+    public Page<CashCard> findByOwnerFirstPage() {
+        return cashCardRepository.findByOwner(owner(randomId()), PageRequest.of(0, 20, BY_AMOUNT));
+    }
+
+    @Benchmark
+    public Page<CashCard> findByOwnerDeepPage() {
+        int lastPage = Math.max(0, rows / OWNERS / 20 - 1);
+        return cashCardRepository.findByOwner(owner(randomId()), PageRequest.of(lastPage, 20, BY_AMOUNT));
+    }
+
+    @Benchmark
+    public Slice<CashCard> findByOwnerAfter() {
+        return cashCardRepository.findByOwnerAfter(owner(randomId()), BY_AMOUNT.iterator().next(), null, 20);
+    }
+
+    @Benchmark
+    public int updateAmountByIdAndOwner() {
+        long id = randomId();
+        return cashCardRepository.updateAmountByIdAndOwner(id, owner(id), BigDecimal.valueOf(id % 100000, 2));
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rows + 1);
+    }
+
+    private static String owner(long id) {
+        return "owner-" + (id % OWNERS);
+    }
+}
@@ -0,0 +1,58 @@
+package mrearsbig.cashcard;
+
+import java.net.http.HttpRequest;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end {@code GET /cashcards/{id}} and {@code GET /cashcards} over HTTP,
+ * including security, the controller, the repository and JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RequestPathBenchmark {
+    private CashCardServer server;
+    private HttpRequest findById;
+    private HttpRequest findAll;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new CashCardServer();
+        String location = null;
+        for (int i = 0; i < 20; i++) {
+            location = server.createCashCard("sarah1", "abc123", (i + 1) + ".50");
+        }
+        findById = server.request(location, "sarah1", "abc123").GET().build();
+        findAll = server.request("/cashcards?size=20", "sarah1", "abc123").GET().build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public int findById() {
+        return server.send(findById).statusCode();
+    }
+
+    @Benchmark
+    public int findAll() {
+        return server.send(findAll).statusCode();
+    }
+}
@@ -0,0 +1,66 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import jakarta.servlet.Filter;
+import jakarta.servlet.ServletException;
+
+/**
+ * Cost of the {@link SecurityConfig} filter chain alone: the request goes through
+ * Spring Security's filters and stops at a no-op servlet, so no controller or
+ * database work is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityFilterChainBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean authCacheEnabled;
+
+    private CashCardServer server;
+    private Filter springSecurityFilterChain;
+    private String authorization;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new CashCardServer("cashcard.security.auth-cache.enabled=" + authCacheEnabled);
+        springSecurityFilterChain = server.context().getBean("springSecurityFilterChain", Filter.class);
+        authorization = "Basic " + Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public int authenticatedRequest() throws IOException, ServletException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/cashcards/99");
+        request.addHeader("Authorization", authorization);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        springSecurityFilterChain.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
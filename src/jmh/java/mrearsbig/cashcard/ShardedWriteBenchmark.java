@@ -0,0 +1,79 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Card inserts per second from 16 threads, each picking one of 10k owners at
+ * random, with the cards on 1, 2, 4 or 8 H2 file shards. Each shard is its own
+ * database file with its own connection pool, so the throughput per shard
+ * count shows how far writes scale out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class ShardedWriteBenchmark {
+    private static final int OWNERS = 10_000;
+
+    @Param({ "1", "2", "4", "8" })
+    public int shards;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private CashCardRepository cashCardRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cashcard-shards");
+        StringJoiner urls = new StringJoiner(",");
+        for (int i = 0; i < shards; i++) {
+            urls.add("jdbc:h2:file:" + directory.resolve("shard" + i));
+        }
+        context = new SpringApplicationBuilder(CashCardApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("sharded")
+                .properties("logging.level.root=WARN", "cashcard.sharding.urls=" + urls)
+                .run();
+        cashCardRepository = context.getBean(CashCardRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public CashCard save() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return cashCardRepository.save(new CashCard(null, BigDecimal.valueOf(random.nextLong(100_000), 2),
+                "owner-" + random.nextInt(OWNERS)));
+    }
+}
@@ -0,0 +1,197 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Load-test harness comparing the servlet and the reactive API while many slow
+ * clients are connected. Each slow client requests the NDJSON export of a
+ * large owner and then reads it a few bytes at a time, so the server has to
+ * hold its response back. Meanwhile fast clients measure the throughput of
+ * {@code GET /cashcards/{id}}, and the server's heap and thread count are
+ * sampled. The clients run in the same JVM on virtual threads, which the thread
+ * count leaves out. Results are printed and written as CSV.
+ *
+ * <p>Tune with {@code -Dloadtest.slowClients=0,1000,5000},
+ * {@code -Dloadtest.fastClients=50}, {@code -Dloadtest.exportCards=20000},
+ * {@code -Dloadtest.duration=PT20S} and {@code -Dloadtest.output=...}. High
+ * client counts need a raised open-files limit ({@code ulimit -n}).
+ */
+public class SlowClientLoadTest {
+    private static final int SLOW_READ_BYTES = 64;
+    private static final Duration SLOW_READ_PAUSE = Duration.ofMillis(100);
+
+    public static void main(String[] args) throws Exception {
+        int[] slowClientCounts = Arrays.stream(System.getProperty("loadtest.slowClients", "0,1000,5000").split(","))
+                .mapToInt(count -> Integer.parseInt(count.trim()))
+                .toArray();
+        int fastClients = Integer.getInteger("loadtest.fastClients", 50);
+        int exportCards = Integer.getInteger("loadtest.exportCards", 20_000);
+        Duration duration = Duration.parse(System.getProperty("loadtest.duration", "PT20S"));
+        Path output = Path.of(System.getProperty("loadtest.output", "build/results/loadtest/slow-clients.csv"));
+
+        List<String> rows = new ArrayList<>();
+        rows.add("stack,slow_clients,fast_requests,errors,throughput_per_s,p99_ms,heap_used_mb,threads");
+
+        for (String stack : new String[] { "servlet", "reactive" }) {
+            try (CashCardServer server = new CashCardServer(
+                    "spring.main.web-application-type=" + stack,
+                    "server.tomcat.max-connections=20000",
+                    "server.tomcat.accept-count=20000")) {
+                seed(server, exportCards);
+                String location = server.createCashCard("sarah1", "abc123", "123.45");
+                HttpRequest request = server.request(location, "sarah1", "abc123").GET().build();
+
+                for (int slowClients : slowClientCounts) {
+                    Result result = run(server, request, slowClients, fastClients, duration);
+                    String row = String.format("%s,%d,%d,%d,%.1f,%.2f,%.1f,%d", stack, slowClients,
+                            result.requests(), result.errors(), result.requests() / (duration.toMillis() / 1000.0),
+                            result.p99Millis(), result.heapUsedMegabytes(), result.threads());
+                    System.out.println(row);
+                    rows.add(row);
+                }
+            }
+        }
+
+        Files.createDirectories(output.getParent());
+        Files.write(output, rows);
+        System.out.println("Results written to " + output.toAbsolutePath());
+    }
+
+    private static void seed(CashCardServer server, int cards) {
+        // kumar2 owns the large export the slow clients read.
+        for (int start = 0; start < cards; start += 1000) {
+            String body = IntStream.range(start, Math.min(start + 1000, cards))
+                    .mapToObj(i -> "{\"amount\": " + BigDecimal.valueOf(i, 2) + "}")
+                    .reduce((left, right) -> left + "," + right)
+                    .orElseThrow();
+            server.send(server.request("/cashcards/batch", "kumar2", "xyz789")
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("[" + body + "]"))
+                    .build());
+        }
+    }
+
+    private static Result run(CashCardServer server, HttpRequest request, int slowClients, int fastClients,
+            Duration duration) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        URI baseUri = request.uri();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < slowClients; i++) {
+                executor.submit(() -> readSlowly(baseUri, running));
+            }
+
+            long deadline = System.nanoTime() + duration.toNanos();
+            List<Future<long[]>> clients = new ArrayList<>(fastClients);
+            for (int i = 0; i < fastClients; i++) {
+                clients.add(executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    int errors = 0;
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        int status;
+                        try {
+                            status = server.send(request).statusCode();
+                        } catch (IllegalStateException e) {
+                            status = -1;
+                        }
+                        if (status != 200) {
+                            errors++;
+                            continue;
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    long[] result = Arrays.copyOf(latencies, count + 1);
+                    result[count] = errors;
+                    return result;
+                }));
+            }
+
+            long errors = 0;
+            List<long[]> latencies = new ArrayList<>(fastClients);
+            for (Future<long[]> client : clients) {
+                long[] result = client.get();
+                errors += result[result.length - 1];
+                latencies.add(Arrays.copyOf(result, result.length - 1));
+            }
+
+            // Sampled while the slow clients are still connected, after a GC, so
+            // it is what the server retains for them rather than garbage.
+            System.gc();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            double heapUsed = memory.getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0);
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            running.set(false);
+            executor.shutdownNow();
+            long[] merged = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            return new Result(merged, errors, heapUsed, threads);
+        }
+    }
+
+    private static void readSlowly(URI uri, AtomicBoolean running) {
+        String credentials = Base64.getEncoder().encodeToString("kumar2:xyz789".getBytes(StandardCharsets.UTF_8));
+        try (Socket socket = new Socket()) {
+            // A small receive buffer, set before connecting so the window stays
+            // small, makes the server notice the slow reader early.
+            socket.setReceiveBufferSize(4096);
+            socket.connect(new InetSocketAddress(uri.getHost(), uri.getPort()));
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /cashcards/export HTTP/1.1\r\nHost: " + uri.getHost() + "\r\nAuthorization: Basic "
+                    + credentials + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[SLOW_READ_BYTES];
+            while (running.get() && in.read(buffer) >= 0) {
+                Thread.sleep(SLOW_READ_PAUSE);
+            }
+        } catch (IOException e) {
+            // The server gave up on this client; that is part of what is measured.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Result(long[] sortedLatencies, long errors, double heapUsedMegabytes, int threads) {
+
+        long requests() {
+            return sortedLatencies.length;
+        }
+
+        double p99Millis() {
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(0.99 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+
+    private SlowClientLoadTest() {
+    }
+}
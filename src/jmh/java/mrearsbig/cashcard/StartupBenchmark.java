@@ -0,0 +1,170 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+/**
+ * Measures how long a new instance takes to serve its first successful
+ * {@code GET /cashcards}, from launching the JVM to the first 200, for each
+ * startup mode:
+ * <ul>
+ * <li>{@code jvm}: the boot jar as is</li>
+ * <li>{@code lazy}: the boot jar with the {@code lazy} profile</li>
+ * <li>{@code aot}: the boot jar with {@code -Dspring.aot.enabled=true}; needs a jar built with {@code -Paot}</li>
+ * <li>{@code cds}: the extracted jar with the archive from {@code ./gradlew cdsArchive}, plus AOT when the
+ * jar was built with it</li>
+ * </ul>
+ * Every run is a fresh JVM with a fresh in-memory database, migrated together
+ * with the test data so the test users can log in. Modes whose build output is
+ * missing are skipped. Results are printed and written as CSV.
+ *
+ * <p>Tune with {@code -Dstartup.modes=jvm,lazy,aot,cds}, {@code -Dstartup.runs=5}
+ * and {@code -Dstartup.output=...}.
+ */
+public class StartupBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(120);
+
+    public static void main(String[] args) throws Exception {
+        Path java = Path.of(System.getProperty("startup.java",
+                Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        Path jar = Path.of(System.getProperty("startup.jar"));
+        Path cdsDirectory = Path.of(System.getProperty("startup.cds"));
+        Path testData = Path.of(System.getProperty("startup.testData"));
+        List<String> modes = Arrays.stream(System.getProperty("startup.modes", "jvm,lazy,aot,cds").split(","))
+                .map(String::trim)
+                .toList();
+        int runs = Integer.parseInt(System.getProperty("startup.runs", "5"));
+        Path output = Path.of(System.getProperty("startup.output", "build/results/startup/startup.csv"));
+        Path logs = output.resolveSibling("logs");
+        Files.createDirectories(logs);
+
+        List<String> rows = new ArrayList<>();
+        rows.add("mode,runs,min_ms,median_ms,max_ms");
+
+        for (String mode : modes) {
+            List<String> command = command(mode, java, jar, cdsDirectory);
+            if (command == null) {
+                continue;
+            }
+            command.add("--spring.flyway.locations=classpath:db/migration,filesystem:" + testData.toAbsolutePath());
+            long[] millis = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                millis[run] = timeToFirstRequest(command, logs.resolve(mode + "-" + run + ".log"));
+            }
+            Arrays.sort(millis);
+            String row = String.format("%s,%d,%d,%d,%d", label(mode, jar, cdsDirectory), runs, millis[0],
+                    millis[runs / 2], millis[runs - 1]);
+            System.out.println(row);
+            rows.add(row);
+        }
+
+        Files.write(output, rows);
+        System.out.println("Results written to " + output.toAbsolutePath());
+    }
+
+    private static List<String> command(String mode, Path java, Path jar, Path cdsDirectory) throws IOException {
+        List<String> command = new ArrayList<>(List.of(java.toString()));
+        switch (mode) {
+            case "jvm" -> command.addAll(List.of("-jar", jar.toString()));
+            case "lazy" -> command.addAll(List.of("-jar", jar.toString(), "--spring.profiles.active=lazy"));
+            case "aot" -> {
+                if (!isAotProcessed(jar)) {
+                    System.out.println("Skipping aot: build the jar with './gradlew bootJar -Paot'");
+                    return null;
+                }
+                command.addAll(List.of("-Dspring.aot.enabled=true", "-jar", jar.toString()));
+            }
+            case "cds" -> {
+                Path extracted = cdsDirectory.resolve(jar.getFileName());
+                Path archive = cdsDirectory.resolve("application.jsa");
+                if (!Files.exists(archive)) {
+                    System.out.println("Skipping cds: create the archive with './gradlew cdsArchive'");
+                    return null;
+                }
+                command.add("-XX:SharedArchiveFile=" + archive);
+                if (isAotProcessed(extracted)) {
+                    command.add("-Dspring.aot.enabled=true");
+                }
+                command.addAll(List.of("-jar", extracted.toString()));
+            }
+            default -> throw new IllegalArgumentException("Unknown startup mode " + mode);
+        }
+        return command;
+    }
+
+    private static long timeToFirstRequest(List<String> command, Path log) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> arguments = new ArrayList<>(command);
+        arguments.add("--server.port=" + port);
+
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        String credentials = Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/cashcards"))
+                .header("Authorization", "Basic " + credentials)
+                .GET()
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(arguments)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            while (System.nanoTime() - start < TIMEOUT.toNanos()) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("The application exited with " + process.exitValue()
+                            + "; see " + log.toAbsolutePath());
+                }
+                try {
+                    if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                } catch (IOException e) {
+                    // Not listening yet.
+                }
+                Thread.sleep(10);
+            }
+            throw new IllegalStateException("No successful request within " + TIMEOUT + "; see " + log.toAbsolutePath());
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static String label(String mode, Path jar, Path cdsDirectory) throws IOException {
+        return mode.equals("cds") && isAotProcessed(cdsDirectory.resolve(jar.getFileName())) ? "aot+cds" : mode;
+    }
+
+    private static boolean isAotProcessed(Path jar) throws IOException {
+        if (!Files.exists(jar)) {
+            return false;
+        }
+        // Extracted jars keep the classes at the root, boot jars under BOOT-INF.
+        String initializer = "mrearsbig/cashcard/CashCardApplication__ApplicationContextInitializer.class";
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            return jarFile.getEntry("BOOT-INF/classes/" + initializer) != null || jarFile.getEntry(initializer) != null;
+        }
+    }
+
+    private StartupBenchmark() {
+    }
+}
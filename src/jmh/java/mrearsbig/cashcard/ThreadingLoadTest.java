@@ -0,0 +1,131 @@
+package mrearsbig.cashcard;
+
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load-test harness comparing Tomcat on platform threads with virtual threads.
+ * For each mode and each concurrency level it keeps that many clients busy
+ * with {@code GET /cashcards/{id}} and reports throughput and latency
+ * percentiles. Results are printed and written as CSV.
+ *
+ * <p>Tune with {@code -Dloadtest.concurrency=1000,5000,10000},
+ * {@code -Dloadtest.duration=PT20S} and {@code -Dloadtest.output=...}. High
+ * concurrency levels need a raised open-files limit ({@code ulimit -n}).
+ */
+public class ThreadingLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int[] concurrencyLevels = Arrays.stream(System.getProperty("loadtest.concurrency", "1000,5000,10000").split(","))
+                .mapToInt(level -> Integer.parseInt(level.trim()))
+                .toArray();
+        Duration duration = Duration.parse(System.getProperty("loadtest.duration", "PT20S"));
+        Path output = Path.of(System.getProperty("loadtest.output", "build/results/loadtest/threading.csv"));
+
+        List<String> rows = new ArrayList<>();
+        rows.add("mode,concurrency,requests,errors,throughput_per_s,p50_ms,p99_ms,max_ms");
+
+        for (boolean virtualThreads : new boolean[] { false, true }) {
+            String mode = virtualThreads ? "virtual" : "platform";
+            try (CashCardServer server = new CashCardServer(
+                    "spring.threads.virtual.enabled=" + virtualThreads,
+                    "server.tomcat.max-connections=20000",
+                    "server.tomcat.accept-count=20000")) {
+                String location = server.createCashCard("sarah1", "abc123", "123.45");
+                HttpRequest request = server.request(location, "sarah1", "abc123").GET().build();
+
+                for (int concurrency : concurrencyLevels) {
+                    Result result = run(server, request, concurrency, duration);
+                    String row = String.format("%s,%d,%d,%d,%.1f,%.2f,%.2f,%.2f", mode, concurrency,
+                            result.requests(), result.errors(), result.throughput(duration),
+                            result.percentileMillis(50), result.percentileMillis(99), result.percentileMillis(100));
+                    System.out.println(row);
+                    rows.add(row);
+                }
+            }
+        }
+
+        Files.createDirectories(output.getParent());
+        Files.write(output, rows);
+        System.out.println("Results written to " + output.toAbsolutePath());
+    }
+
+    private static Result run(CashCardServer server, HttpRequest request, int concurrency, Duration duration)
+            throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<long[]>> clients = new ArrayList<>(concurrency);
+
+        // Each client is a virtual thread so that the harness itself never limits
+        // the number of requests in flight.
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                clients.add(executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    int errors = 0;
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        int status;
+                        try {
+                            status = server.send(request).statusCode();
+                        } catch (IllegalStateException | UncheckedIOException e) {
+                            status = -1;
+                        }
+                        if (status != 200) {
+                            errors++;
+                            continue;
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    long[] result = Arrays.copyOf(latencies, count + 1);
+                    result[count] = errors;
+                    return result;
+                }));
+            }
+        }
+
+        long errors = 0;
+        List<long[]> latencies = new ArrayList<>(concurrency);
+        for (Future<long[]> client : clients) {
+            long[] result = client.get();
+            errors += result[result.length - 1];
+            latencies.add(Arrays.copyOf(result, result.length - 1));
+        }
+        long[] merged = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(merged, errors);
+    }
+
+    private record Result(long[] sortedLatencies, long errors) {
+
+        long requests() {
+            return sortedLatencies.length;
+        }
+
+        double throughput(Duration duration) {
+            return sortedLatencies.length / (duration.toMillis() / 1000.0);
+        }
+
+        double percentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+
+    private ThreadingLoadTest() {
+    }
+}
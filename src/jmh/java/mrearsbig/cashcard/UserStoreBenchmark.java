@@ -0,0 +1,121 @@
+package mrearsbig.cashcard;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * {@link CashCardUserStore} with 100k and 1M users. The startup side measures
+ * what a new instance pays before it can check a first login, and before every
+ * user is indexed, against the cost of one BCrypt encode, which the old
+ * in-memory setup paid per user at startup. The lookup side samples the
+ * latency of an indexed lookup and of the single-row read a miss falls back to.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserStoreBenchmark {
+    private static final String PASSWORD = new BCryptPasswordEncoder(4).encode("secret");
+
+    @Param({ "100000", "1000000" })
+    public int users;
+
+    private ConfigurableApplicationContext context;
+    private DataSource dataSource;
+    private CashCardUserStore indexed;
+    private CashCardUserStore unindexed;
+    private BCryptPasswordEncoder passwordEncoder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        context = new SpringApplicationBuilder(CashCardApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN")
+                .run();
+        dataSource = context.getBean(DataSource.class);
+        new JdbcTemplate(dataSource).update("""
+                INSERT INTO cash_card_user (username, password, roles)
+                SELECT 'owner-' || X, ?, 'CARD-OWNER' FROM SYSTEM_RANGE(1, ?)""", PASSWORD, users);
+
+        indexed = new CashCardUserStore(dataSource, 10_000, Duration.ofDays(1));
+        indexed.awaitLoaded();
+        // Entries are always stale, so every lookup reads its row.
+        unindexed = new CashCardUserStore(dataSource, 10_000, Duration.ZERO);
+        passwordEncoder = new BCryptPasswordEncoder();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        indexed.close();
+        unindexed.close();
+        context.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public UserDetails firstLookup() {
+        try (CashCardUserStore store = new CashCardUserStore(dataSource, 10_000, Duration.ofDays(1))) {
+            return store.loadUserByUsername(randomUser());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public int fullIndex() throws InterruptedException {
+        try (CashCardUserStore store = new CashCardUserStore(dataSource, 10_000, Duration.ofDays(1))) {
+            store.awaitLoaded();
+            return store.size();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String bcryptEncode() {
+        return passwordEncoder.encode("secret");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public UserDetails indexedLookup() {
+        return indexed.loadUserByUsername(randomUser());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public UserDetails databaseLookup() {
+        return unindexed.loadUserByUsername(randomUser());
+    }
+
+    private String randomUser() {
+        return "owner-" + ThreadLocalRandom.current().nextInt(1, users + 1);
+    }
+}
@@ -0,0 +1,134 @@
+package mrearsbig.cashcard;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.security.authentication.AccountStatusUserDetailsChecker;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+    private static final String DIGEST_ALGORITHM = "HmacSHA256";
+
+    private final AuthenticationProvider delegate;
+    private final UserDetailsService userDetailsService;
+    private final Cache<String, CachedCredentials> cache;
+    private final SecretKeySpec digestKey;
+    private final AccountStatusUserDetailsChecker userDetailsChecker = new AccountStatusUserDetailsChecker();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, UserDetailsService userDetailsService,
+            long maximumSize, Duration timeToLive) {
+        this.delegate = delegate;
+        this.userDetailsService = userDetailsService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .build();
+
+        // The digest key only lives in this process, so cache keys cannot be
+        // precomputed offline or compared across instances.
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.digestKey = new SecretKeySpec(key, DIGEST_ALGORITHM);
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        Object credentials = authentication.getCredentials();
+        if (credentials == null) {
+            return delegate.authenticate(authentication);
+        }
+
+        String username = authentication.getName();
+        String key = digest(username, credentials.toString());
+        CachedCredentials cached = cache.getIfPresent(key);
+
+        if (cached != null) {
+            // The user store is still consulted on a hit (it is cheap compared to
+            // BCrypt), so a password change or a removed user invalidates the entry.
+            UserDetails user = loadCurrentUser(username);
+            if (user != null && cached.encodedPassword().equals(user.getPassword())) {
+                userDetailsChecker.check(user);
+                hits.increment();
+                return createSuccessAuthentication(user, authentication);
+            }
+            cache.invalidate(key);
+        }
+
+        misses.increment();
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.getPrincipal() instanceof UserDetails user && user.getPassword() != null) {
+            cache.put(key, new CachedCredentials(user.getUsername(), user.getPassword()));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+
+    public void evict(String username) {
+        cache.asMap().values().removeIf(cached -> cached.username().equals(username));
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private UserDetails loadCurrentUser(String username) {
+        try {
+            return userDetailsService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+    }
+
+    private Authentication createSuccessAuthentication(UserDetails user, Authentication authentication) {
+        UsernamePasswordAuthenticationToken result = UsernamePasswordAuthenticationToken.authenticated(
+                user, authentication.getCredentials(), user.getAuthorities());
+        result.setDetails(authentication.getDetails());
+        return result;
+    }
+
+    private String digest(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance(DIGEST_ALGORITHM);
+            mac.init(digestKey);
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return HexFormat.of().formatHex(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to digest credentials", e);
+        }
+    }
+
+    private record CachedCredentials(String username, String encodedPassword) {
+    }
+}
@@ -1,11 +1,37 @@
 package mrearsbig.cashcard;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceCreator;
+import org.springframework.data.annotation.Version;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
-public record CashCard(@Id Long id, Double amount, String owner) {
+public record CashCard(@Id Long id, BigDecimal amount, String owner, @Version @JsonIgnore Long version) {
 
     // This is a record class that represents a CashCard with an ID and an amount.
     // It can be used to serialize and deserialize JSON representations of cash cards.
     // The record automatically provides equals, hashCode, and toString methods.
-    
+    // The version is used for optimistic locking and ETags; it is not part of the JSON.
+    // Amounts are exact decimals with two fractional digits (whole minor units);
+    // anything finer than a cent is rejected rather than rounded.
+
+    public static final int AMOUNT_SCALE = 2;
+
+    @PersistenceCreator
+    public CashCard {
+        if (amount != null) {
+            amount = amount.setScale(AMOUNT_SCALE, RoundingMode.UNNECESSARY);
+        }
+    }
+
+    @JsonCreator
+    public CashCard(Long id, BigDecimal amount, String owner) {
+        this(id, amount, owner, null);
+    }
+
+    public String eTag() {
+        return "\"" + version + "\"";
+    }
 }
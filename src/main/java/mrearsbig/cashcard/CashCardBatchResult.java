@@ -0,0 +1,8 @@
+package mrearsbig.cashcard;
+
+public record CashCardBatchResult(Long id, int status) {
+
+    // This record reports the outcome of one item of a batch request.
+    // The status uses the same HTTP status code the single-item endpoint would return.
+
+}
@@ -0,0 +1,51 @@
+package mrearsbig.cashcard;
+
+import java.time.Duration;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+@Component
+public class CashCardCache {
+    private final CashCardRepository cashCardRepository;
+    private final Cache<Key, CashCard> cache;
+
+    CashCardCache(CashCardRepository cashCardRepository,
+            @Value("${cashcard.cache.cards.maximum-size}") long maximumSize,
+            @Value("${cashcard.cache.cards.time-to-live}") Duration timeToLive, MeterRegistry meterRegistry) {
+        this.cashCardRepository = cashCardRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "cashcard.cards");
+    }
+
+    public CashCard findByIdAndOwner(Long id, String owner) {
+        // Loads for the same key are serialized with invalidations of that key, so a
+        // write that invalidates after committing can never be overtaken by a load
+        // that read the old row. Misses (unknown or foreign ids) are not cached.
+        return cache.get(new Key(id, owner), key -> cashCardRepository.findByIdAndOwner(id, owner));
+    }
+
+    public void invalidate(Long id, String owner) {
+        cache.invalidate(new Key(id, owner));
+    }
+
+    public void invalidateAll(List<Long> ids, String owner) {
+        cache.invalidateAll(ids.stream().map(id -> new Key(id, owner)).toList());
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private record Key(Long id, String owner) {
+    }
+}
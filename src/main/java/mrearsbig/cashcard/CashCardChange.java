@@ -0,0 +1,14 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+public record CashCardChange(long sequence, Type type, Long id, BigDecimal amount, Long version, Instant changedAt) {
+
+    // This record is one entry of an owner's change feed. A deleted card only
+    // carries its id; created and updated ones carry the state after the change.
+
+    public enum Type {
+        CREATE, UPDATE, DELETE
+    }
+}
@@ -0,0 +1,103 @@
+package mrearsbig.cashcard;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Deletes change-feed entries older than {@code cashcard.changes.retention}, on
+ * every shard when storage is sharded. {@code changed_at} is when the writing
+ * transaction started, not when it took its sequence number, so an owner's
+ * timestamps need not rise with the sequence. Each owner's feed is therefore
+ * cut by sequence, up to the newest expired entry, and never loses an entry
+ * while keeping an older one. Each chunk of {@code chunk-size} rows is its own
+ * short statement, so a large backlog never holds locks for long. The
+ * owners' sequence rows stay, so a client that synced before the cutoff gets
+ * 410 Gone instead of a feed with a silent gap. Never lazy, since nothing else
+ * asks for it.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnExpression("'${cashcard.storage}' != 'memory'")
+public class CashCardChangeCompactor implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CashCardChangeCompactor.class);
+
+    private static final String SELECT_EXPIRED = """
+            SELECT owner, MAX(sequence) FROM cash_card_change WHERE changed_at < ? GROUP BY owner""";
+    private static final String DELETE_EXPIRED = """
+            DELETE FROM cash_card_change WHERE owner = ? AND sequence <= ? FETCH FIRST ? ROWS ONLY""";
+
+    private final Collection<? extends DataSource> dataSources;
+    private final Duration retention;
+    private final int chunkSize;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("cashcard-change-compactor").daemon().factory());
+
+    CashCardChangeCompactor(ObjectProvider<DataSource> dataSource, ObjectProvider<CashCardShards> shards,
+            @Value("${cashcard.changes.retention}") Duration retention,
+            @Value("${cashcard.changes.compaction-interval}") Duration interval,
+            @Value("${cashcard.changes.compaction-chunk-size}") int chunkSize) {
+        // The routing DataSource of sharded storage has no shard selected here, so
+        // the shards are compacted one by one instead.
+        CashCardShards cashCardShards = shards.getIfAvailable();
+        this.dataSources = cashCardShards != null ? cashCardShards.dataSources().values()
+                : List.of(dataSource.getObject());
+        this.retention = retention;
+        this.chunkSize = chunkSize;
+        scheduler.scheduleWithFixedDelay(this::compact, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** Deletes the entries older than the retention window and returns how many went. */
+    long compact() {
+        try {
+            return compact(Instant.now().minus(retention));
+        } catch (RuntimeException e) {
+            // The next run deletes whatever this one left behind.
+            logger.warn("Compacting the cash card change feed failed", e);
+            return 0;
+        }
+    }
+
+    long compact(Instant cutoff) {
+        OffsetDateTime before = cutoff.atOffset(ZoneOffset.UTC);
+        long deleted = 0;
+        for (DataSource dataSource : dataSources) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            List<Map.Entry<String, Long>> expired = jdbcTemplate.query(SELECT_EXPIRED,
+                    (resultSet, rowNum) -> Map.entry(resultSet.getString(1), resultSet.getLong(2)), before);
+            for (Map.Entry<String, Long> owner : expired) {
+                int chunk;
+                do {
+                    chunk = jdbcTemplate.update(DELETE_EXPIRED, owner.getKey(), owner.getValue(), chunkSize);
+                    deleted += chunk;
+                } while (chunk == chunkSize);
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Compacted {} cash card changes older than {}", deleted, cutoff);
+        }
+        return deleted;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
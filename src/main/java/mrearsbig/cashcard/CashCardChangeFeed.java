@@ -0,0 +1,144 @@
+package mrearsbig.cashcard;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads an owner's change feed and lets requests wait for its next change.
+ *
+ * <p>Writes handled by this instance call {@link #changed} once they have
+ * committed, which wakes the owner's waiters at once. Changes this instance
+ * never hears about, such as writes from another instance, are picked up by a
+ * sweep that wakes every waiter each {@code poll-interval}. A woken waiter
+ * reads the feed again and goes back to waiting if nothing is new, so a
+ * spurious wake-up only costs one indexed query.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnExpression("'${cashcard.storage}' != 'memory'")
+public class CashCardChangeFeed implements AutoCloseable {
+    private final CashCardChangeLog changeLog;
+    private final ConcurrentHashMap<String, Set<Runnable>> waiters = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("cashcard-change-feed").daemon().factory());
+
+    CashCardChangeFeed(ObjectProvider<DataSource> dataSource, ObjectProvider<CashCardShards> shards,
+            ObjectProvider<ShardRouter> shardRouter,
+            @Value("${cashcard.changes.poll-interval}") Duration pollInterval) {
+        CashCardShards cashCardShards = shards.getIfAvailable();
+        this.changeLog = cashCardShards != null ? new CashCardChangeLog(cashCardShards, shardRouter.getObject())
+                : new CashCardChangeLog(dataSource.getObject());
+        scheduler.scheduleWithFixedDelay(this::sweep, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    CashCardChanges read(String owner, long since, int limit) {
+        return changeLog.findByOwner(owner, since, limit);
+    }
+
+    /** The owner's latest sequence, where a client that just downloaded every card starts. */
+    long lastSequence(String owner) {
+        return changeLog.findByOwner(owner, 0, 0).lastSequence();
+    }
+
+    /**
+     * Completes with the owner's changes after {@code since} as soon as there
+     * are any, or with whatever is there (usually nothing) once {@code timeout}
+     * has passed. A feed that no longer continues from {@code since} completes
+     * at once. Cancelling the future stops the wait.
+     */
+    CompletableFuture<CashCardChanges> awaitChanges(String owner, long since, int limit, Duration timeout) {
+        CompletableFuture<CashCardChanges> future = new CompletableFuture<>();
+        Runnable waiter = new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                // Registering before reading means a change that commits while
+                // we read still wakes us up afterwards.
+                await(owner, this);
+                try {
+                    CashCardChanges changes = read(owner, since, limit);
+                    if (!changes.changes().isEmpty() || !changes.continueFrom(since)) {
+                        future.complete(changes);
+                    }
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+        ScheduledFuture<?> expiry = scheduler.schedule(() -> executor.execute(() -> {
+            try {
+                future.complete(read(owner, since, limit));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }), timeout.toMillis(), TimeUnit.MILLISECONDS);
+        future.whenComplete((changes, failure) -> {
+            expiry.cancel(false);
+            cancel(owner, waiter);
+        });
+        waiter.run();
+        return future;
+    }
+
+    /** Called after a write for the owner has committed. */
+    void changed(String owner) {
+        Set<Runnable> woken = waiters.remove(owner);
+        if (woken == null) {
+            return;
+        }
+        try {
+            woken.forEach(executor::execute);
+        } catch (RejectedExecutionException e) {
+            // Shutting down: the waiting requests are being closed anyway.
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void await(String owner, Runnable waiter) {
+        // The set is only touched inside the map's atomic operations, so a waiter
+        // is never added to a set that changed() has already taken out.
+        waiters.compute(owner, (key, ownerWaiters) -> {
+            Set<Runnable> updated = ownerWaiters != null ? ownerWaiters : new HashSet<>();
+            updated.add(waiter);
+            return updated;
+        });
+    }
+
+    private void cancel(String owner, Runnable waiter) {
+        waiters.computeIfPresent(owner, (key, ownerWaiters) -> {
+            ownerWaiters.remove(waiter);
+            return ownerWaiters.isEmpty() ? null : ownerWaiters;
+        });
+    }
+
+    private void sweep() {
+        for (String owner : List.copyOf(waiters.keySet())) {
+            changed(owner);
+        }
+    }
+}
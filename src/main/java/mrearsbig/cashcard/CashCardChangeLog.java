@@ -0,0 +1,79 @@
+package mrearsbig.cashcard;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * Reads the {@code cash_card_change} rows that {@code CashCardChangeTrigger}
+ * writes. The log only exists in the database, so it is read here rather than
+ * through {@link CashCardRepository}, which the memory engine also implements.
+ * With sharded storage, each read goes to the owner's shard under the owner's
+ * call lock, the same way {@link ShardRoutingInterceptor} routes repository calls.
+ */
+class CashCardChangeLog {
+    private static final String SELECT_LAST_CHANGE = """
+            SELECT last_sequence FROM cash_card_change_sequence WHERE owner = :owner""";
+    private static final String SELECT_CHANGES = """
+            SELECT sequence, change_type, card_id, amount, version, changed_at FROM cash_card_change
+            WHERE owner = :owner AND sequence > :since ORDER BY sequence FETCH FIRST :limit ROWS ONLY""";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CashCardShards shards;
+    private final ShardRouter shardRouter;
+
+    CashCardChangeLog(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.shards = null;
+        this.shardRouter = null;
+    }
+
+    CashCardChangeLog(CashCardShards shards, ShardRouter shardRouter) {
+        this.jdbcTemplate = null;
+        this.shards = shards;
+        this.shardRouter = shardRouter;
+    }
+
+    CashCardChanges findByOwner(String owner, long since, int limit) {
+        if (shardRouter == null) {
+            return findByOwner(jdbcTemplate, owner, since, limit);
+        }
+        Lock lock = shardRouter.callLock(owner);
+        lock.lock();
+        try {
+            DataSource dataSource = shards.dataSource(shardRouter.shardFor(owner));
+            return findByOwner(new NamedParameterJdbcTemplate(dataSource), owner, since, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static CashCardChanges findByOwner(NamedParameterJdbcTemplate jdbcTemplate, String owner, long since,
+            int limit) {
+        // The latest sequence is read first: every change up to it has committed,
+        // so the query below cannot miss one and make the feed look compacted.
+        MapSqlParameterSource parameters = new MapSqlParameterSource("owner", owner)
+                .addValue("since", since)
+                .addValue("limit", limit);
+        List<Long> lastSequence = jdbcTemplate.queryForList(SELECT_LAST_CHANGE, parameters, Long.class);
+        List<CashCardChange> changes = jdbcTemplate.query(SELECT_CHANGES, parameters,
+                (resultSet, rowNum) -> mapChange(resultSet));
+        long last = lastSequence.isEmpty() ? 0 : lastSequence.get(0);
+        if (!changes.isEmpty()) {
+            last = Math.max(last, changes.get(changes.size() - 1).sequence());
+        }
+        return new CashCardChanges(changes, last);
+    }
+
+    private static CashCardChange mapChange(ResultSet resultSet) throws SQLException {
+        return new CashCardChange(resultSet.getLong("sequence"),
+                CashCardChange.Type.valueOf(resultSet.getString("change_type")), resultSet.getLong("card_id"),
+                resultSet.getBigDecimal("amount"), resultSet.getObject("version", Long.class),
+                resultSet.getObject("changed_at", OffsetDateTime.class).toInstant());
+    }
+}
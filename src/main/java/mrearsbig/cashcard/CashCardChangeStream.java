@@ -0,0 +1,118 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes one owner's change feed over a server-sent events connection. Every
+ * change is an event whose id is its sequence number, so a browser
+ * {@code EventSource} that reconnects sends the last one back in
+ * {@code Last-Event-ID} and resumes where it stopped. While nothing changes, a
+ * comment goes out every heartbeat interval; failing to write it is how a
+ * closed connection is noticed.
+ */
+class CashCardChangeStream {
+    private final CashCardChangeFeed changeFeed;
+    private final String owner;
+    private final int pageSize;
+    private final Duration heartbeatInterval;
+    private final SseEmitter emitter;
+    private volatile boolean closed;
+    private volatile CompletableFuture<CashCardChanges> pending;
+    private long position;
+
+    CashCardChangeStream(CashCardChangeFeed changeFeed, String owner, long position, int pageSize,
+            Duration heartbeatInterval, Duration timeout) {
+        this.changeFeed = changeFeed;
+        this.owner = owner;
+        this.position = position;
+        this.pageSize = pageSize;
+        this.heartbeatInterval = heartbeatInterval;
+        this.emitter = new SseEmitter(timeout.toMillis());
+        emitter.onCompletion(this::close);
+        emitter.onTimeout(this::close);
+        emitter.onError(failure -> close());
+    }
+
+    /** Sends the changes already read after the starting position, then follows the feed. */
+    SseEmitter start(CashCardChanges first) {
+        if (deliver(first, null)) {
+            follow();
+        }
+        return emitter;
+    }
+
+    private void follow() {
+        // Pages that are already there are handled in this loop; only a real wait
+        // hands over to the thread that completes it.
+        while (!closed) {
+            CompletableFuture<CashCardChanges> next = changeFeed.awaitChanges(owner, position, pageSize,
+                    heartbeatInterval);
+            pending = next;
+            if (closed) {
+                next.cancel(false);
+                return;
+            }
+            if (!next.isDone()) {
+                next.whenComplete((changes, failure) -> {
+                    if (deliver(changes, failure)) {
+                        follow();
+                    }
+                });
+                return;
+            }
+            CashCardChanges changes = null;
+            Throwable failure = null;
+            try {
+                changes = next.join();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            if (!deliver(changes, failure)) {
+                return;
+            }
+        }
+    }
+
+    private boolean deliver(CashCardChanges changes, Throwable failure) {
+        if (closed) {
+            return false;
+        }
+        if (failure != null) {
+            emitter.completeWithError(failure);
+            return false;
+        }
+        try {
+            if (!changes.continueFrom(position)) {
+                // Compacted past this client's position: it has to resync.
+                emitter.send(SseEmitter.event().name("gone").data(""));
+                emitter.complete();
+                return false;
+            }
+            if (changes.changes().isEmpty()) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+            for (CashCardChange change : changes.changes()) {
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(change.sequence()))
+                        .data(change, MediaType.APPLICATION_JSON));
+                position = change.sequence();
+            }
+            return true;
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void close() {
+        closed = true;
+        CompletableFuture<CashCardChanges> waiting = pending;
+        if (waiting != null) {
+            waiting.cancel(false);
+        }
+    }
+}
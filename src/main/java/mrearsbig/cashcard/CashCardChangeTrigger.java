@@ -0,0 +1,98 @@
+package mrearsbig.cashcard;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+import org.h2.api.Trigger;
+
+/**
+ * Appends every change to {@code cash_card} to {@code cash_card_change}. Like
+ * {@link CashCardSummaryTrigger}, H2 calls it on the writer's connection inside
+ * its transaction, so a change is logged exactly when the write commits.
+ *
+ * <p>Each owner has its own sequence in {@code cash_card_change_sequence}.
+ * Taking the next number updates the owner's row, which holds its lock until
+ * the transaction ends, so one owner's changes commit in sequence order and a
+ * rollback gives its number back. Clients can therefore treat a gap as lost
+ * history.
+ */
+public class CashCardChangeTrigger implements Trigger {
+    private static final int ID = 0;
+    private static final int AMOUNT = 1;
+    private static final int OWNER = 2;
+    private static final int VERSION = 3;
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private static final String NEXT_SEQUENCE = """
+            UPDATE cash_card_change_sequence SET last_sequence = last_sequence + 1 WHERE owner = ?""";
+    private static final String SELECT_SEQUENCE = """
+            SELECT last_sequence FROM cash_card_change_sequence WHERE owner = ?""";
+    private static final String FIRST_SEQUENCE = """
+            INSERT INTO cash_card_change_sequence (owner, last_sequence) VALUES (?, 1)""";
+    private static final String INSERT_CHANGE = """
+            INSERT INTO cash_card_change (owner, sequence, card_id, change_type, amount, version)
+            VALUES (?, ?, ?, ?, ?, ?)""";
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (oldRow != null && newRow != null && Objects.equals(oldRow[OWNER], newRow[OWNER])) {
+            append(connection, CashCardChange.Type.UPDATE, newRow);
+            return;
+        }
+        // A card that changes hands leaves one owner's feed and enters another's.
+        if (oldRow != null) {
+            append(connection, CashCardChange.Type.DELETE, oldRow);
+        }
+        if (newRow != null) {
+            append(connection, CashCardChange.Type.CREATE, newRow);
+        }
+    }
+
+    private static void append(Connection connection, CashCardChange.Type type, Object[] row) throws SQLException {
+        String owner = (String) row[OWNER];
+        boolean deleted = type == CashCardChange.Type.DELETE;
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_CHANGE)) {
+            statement.setString(1, owner);
+            statement.setLong(2, nextSequence(connection, owner));
+            statement.setObject(3, row[ID]);
+            statement.setString(4, type.name());
+            statement.setObject(5, deleted ? null : row[AMOUNT]);
+            statement.setObject(6, deleted ? null : row[VERSION]);
+            statement.executeUpdate();
+        }
+    }
+
+    private static long nextSequence(Connection connection, String owner) throws SQLException {
+        while (true) {
+            try (PreparedStatement statement = connection.prepareStatement(NEXT_SEQUENCE)) {
+                statement.setString(1, owner);
+                if (statement.executeUpdate() > 0) {
+                    return currentSequence(connection, owner);
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(FIRST_SEQUENCE)) {
+                statement.setString(1, owner);
+                statement.executeUpdate();
+                return 1;
+            } catch (SQLException e) {
+                // Another transaction started the owner's sequence first; take the
+                // next number from it instead.
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static long currentSequence(Connection connection, String owner) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_SEQUENCE)) {
+            statement.setString(1, owner);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        }
+    }
+}
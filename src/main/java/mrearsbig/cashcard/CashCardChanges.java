@@ -0,0 +1,34 @@
+package mrearsbig.cashcard;
+
+import java.util.List;
+
+public record CashCardChanges(List<CashCardChange> changes, long lastSequence) {
+
+    // This record is one page of an owner's change feed, oldest first, with the
+    // owner's latest sequence number. A client is in sync once it has applied
+    // every change up to lastSequence.
+
+    /**
+     * Whether these changes pick up exactly where a client that has seen
+     * everything up to {@code since} left off, without a gap. They do not when
+     * changes after {@code since} were compacted away, or when {@code since} is
+     * ahead of the owner's sequence; either way the client has to resync.
+     */
+    boolean continueFrom(long since) {
+        if (since > lastSequence) {
+            return false;
+        }
+        if (since == lastSequence) {
+            return true;
+        }
+        if (changes.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            if (changes.get(i).sequence() != since + 1 + i) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
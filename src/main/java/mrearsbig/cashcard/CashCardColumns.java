@@ -0,0 +1,388 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented storage behind {@link MemoryCashCardRepository}: one primitive
+ * array per field, indexed by slot. Amounts are fixed-point cents, owners are
+ * interned to ints, and every owner keeps its slots sorted by (amount, id) and
+ * by id so owner queries never touch other owners' cards.
+ *
+ * <p>Not thread-safe; the repository guards it with a read-write lock.
+ */
+final class CashCardColumns {
+    private static final int FREE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] cents = new long[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private int[] owners = new int[INITIAL_CAPACITY];
+    private int highWater;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int size;
+    private long maxId;
+
+    private final LongIntHashMap slotsById = new LongIntHashMap();
+    private final Map<String, Integer> ownerIds = new HashMap<>();
+    private final List<String> ownerNames = new ArrayList<>();
+    private final List<OwnerIndex> ownerIndexes = new ArrayList<>();
+
+    int size() {
+        return size;
+    }
+
+    /** Highest id ever stored, including ids that were later deleted. */
+    long maxId() {
+        return maxId;
+    }
+
+    void advanceMaxId(long id) {
+        maxId = Math.max(maxId, id);
+    }
+
+    /** The slot holding {@code id}, or -1. */
+    int slotOf(long id) {
+        return slotsById.get(id);
+    }
+
+    /** The interned owner id, or -1 for an owner that never had a card. */
+    int ownerId(String owner) {
+        Integer ownerId = ownerIds.get(owner);
+        return ownerId == null ? -1 : ownerId;
+    }
+
+    OwnerIndex index(int ownerId) {
+        return ownerIndexes.get(ownerId);
+    }
+
+    long id(int slot) {
+        return ids[slot];
+    }
+
+    long cents(int slot) {
+        return cents[slot];
+    }
+
+    long version(int slot) {
+        return versions[slot];
+    }
+
+    int owner(int slot) {
+        return owners[slot];
+    }
+
+    String ownerName(int slot) {
+        return ownerNames.get(owners[slot]);
+    }
+
+    boolean isLive(int slot) {
+        return owners[slot] != FREE;
+    }
+
+    /** Slots below this bound are either live or free; see {@link #isLive(int)}. */
+    int highWater() {
+        return highWater;
+    }
+
+    CashCard toCashCard(int slot) {
+        return new CashCard(ids[slot], BigDecimal.valueOf(cents[slot], CashCard.AMOUNT_SCALE), ownerName(slot),
+                versions[slot]);
+    }
+
+    int insert(long id, long amountCents, String owner, long version) {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot();
+        ids[slot] = id;
+        cents[slot] = amountCents;
+        versions[slot] = version;
+        owners[slot] = intern(owner);
+        slotsById.put(id, slot);
+        ownerIndexes.get(owners[slot]).add(slot);
+        size++;
+        advanceMaxId(id);
+        return slot;
+    }
+
+    /** Stores the full state of a card, inserting it or replacing the current one. */
+    int put(long id, long amountCents, String owner, long version) {
+        int slot = slotOf(id);
+        if (slot >= 0 && ownerNames.get(owners[slot]).equals(owner)) {
+            update(slot, amountCents, version);
+            return slot;
+        }
+        if (slot >= 0) {
+            delete(slot);
+        }
+        return insert(id, amountCents, owner, version);
+    }
+
+    void update(int slot, long amountCents, long version) {
+        if (cents[slot] != amountCents) {
+            // The amount is part of the sort key, so the slot has to move.
+            ownerIndexes.get(owners[slot]).reorder(slot, amountCents);
+        }
+        versions[slot] = version;
+    }
+
+    void delete(int slot) {
+        ownerIndexes.get(owners[slot]).remove(slot);
+        slotsById.remove(ids[slot]);
+        owners[slot] = FREE;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    void clear() {
+        for (int slot = 0; slot < highWater; slot++) {
+            if (isLive(slot)) {
+                delete(slot);
+            }
+        }
+    }
+
+    private int nextSlot() {
+        if (highWater == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            cents = Arrays.copyOf(cents, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+        }
+        return highWater++;
+    }
+
+    private int intern(String owner) {
+        Integer ownerId = ownerIds.get(owner);
+        if (ownerId == null) {
+            ownerId = ownerNames.size();
+            ownerIds.put(owner, ownerId);
+            ownerNames.add(owner);
+            ownerIndexes.add(new OwnerIndex());
+        }
+        return ownerId;
+    }
+
+    /**
+     * One owner's slots, kept in two sorted arrays: by (amount, id) and by id.
+     * Owners hold few cards compared to the whole store, so sorted arrays with
+     * binary search beat a tree on both memory and lookup speed.
+     */
+    final class OwnerIndex {
+        private int[] byAmount = new int[4];
+        private int[] byId = new int[4];
+        private int size;
+        // The owner's total in cents as a 128-bit two's complement value, so no
+        // number of cards can overflow it.
+        private long totalHigh;
+        private long totalLow;
+
+        int size() {
+            return size;
+        }
+
+        BigDecimal total() {
+            BigInteger total = BigInteger.valueOf(totalHigh).shiftLeft(Long.SIZE)
+                    .add(new BigInteger(Long.toUnsignedString(totalLow)));
+            return new BigDecimal(total, CashCard.AMOUNT_SCALE);
+        }
+
+        long minCents() {
+            return cents[byAmount[0]];
+        }
+
+        long maxCents() {
+            return cents[byAmount[size - 1]];
+        }
+
+        int byAmount(int position) {
+            return byAmount[position];
+        }
+
+        int byId(int position) {
+            return byId[position];
+        }
+
+        /** First position whose (amount, id) is greater than, or with {@code inclusive} equal to, the key. */
+        int searchAmount(long amountCents, long id, boolean inclusive) {
+            return searchAmount(amountCents, id, inclusive, size);
+        }
+
+        /** First position whose id is greater than, or with {@code inclusive} equal to, {@code id}. */
+        int searchId(long id, boolean inclusive) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                long candidate = ids[byId[middle]];
+                if (candidate < id || (candidate == id && !inclusive)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private int searchAmount(long amountCents, long id, boolean inclusive, int count) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int slot = byAmount[middle];
+                int comparison = cents[slot] != amountCents ? Long.compare(cents[slot], amountCents)
+                        : Long.compare(ids[slot], id);
+                if (comparison < 0 || (comparison == 0 && !inclusive)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void add(int slot) {
+            if (size == byAmount.length) {
+                byAmount = Arrays.copyOf(byAmount, size * 2);
+                byId = Arrays.copyOf(byId, size * 2);
+            }
+            insertAt(byId, searchId(ids[slot], true), slot, size);
+            insertAt(byAmount, searchAmount(cents[slot], ids[slot], true, size), slot, size);
+            size++;
+            addToTotal(cents[slot]);
+        }
+
+        private void remove(int slot) {
+            removeAt(byId, searchId(ids[slot], true), size);
+            removeAt(byAmount, searchAmount(cents[slot], ids[slot], true, size), size);
+            size--;
+            subtractFromTotal(cents[slot]);
+        }
+
+        private void reorder(int slot, long amountCents) {
+            removeAt(byAmount, searchAmount(cents[slot], ids[slot], true, size), size);
+            subtractFromTotal(cents[slot]);
+            addToTotal(amountCents);
+            cents[slot] = amountCents;
+            insertAt(byAmount, searchAmount(amountCents, ids[slot], true, size - 1), slot, size - 1);
+        }
+
+        private void addToTotal(long amountCents) {
+            long low = totalLow + amountCents;
+            // Sign-extend the addend into the high word and carry out of the low one.
+            totalHigh += (amountCents >> 63) + (Long.compareUnsigned(low, totalLow) < 0 ? 1 : 0);
+            totalLow = low;
+        }
+
+        private void subtractFromTotal(long amountCents) {
+            long low = totalLow - amountCents;
+            totalHigh -= (amountCents >> 63) + (Long.compareUnsigned(totalLow, amountCents) < 0 ? 1 : 0);
+            totalLow = low;
+        }
+
+        private static void insertAt(int[] array, int position, int slot, int count) {
+            System.arraycopy(array, position, array, position + 1, count - position);
+            array[position] = slot;
+        }
+
+        private static void removeAt(int[] array, int position, int count) {
+            System.arraycopy(array, position + 1, array, position, count - position - 1);
+        }
+    }
+
+    /**
+     * Open-addressing map from card id to slot with linear probing, so lookups
+     * by id neither box the key nor allocate an entry per card.
+     */
+    static final class LongIntHashMap {
+        private static final int EMPTY = -1;
+
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int[] values = filled(INITIAL_CAPACITY);
+        private int size;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; values[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return EMPTY;
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (values[i] != EMPTY) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (values[i] != EMPTY && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == EMPTY) {
+                return;
+            }
+            // Backward-shift deletion keeps probe sequences intact without tombstones.
+            int hole = i;
+            for (int j = (hole + 1) & mask; values[j] != EMPTY; j = (j + 1) & mask) {
+                int home = hash(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+            }
+            values[hole] = EMPTY;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[capacity];
+            values = filled(capacity);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != EMPTY) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32));
+        }
+
+        private static int[] filled(int capacity) {
+            int[] values = new int[capacity];
+            Arrays.fill(values, EMPTY);
+            return values;
+        }
+    }
+}
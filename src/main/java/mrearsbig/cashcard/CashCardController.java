@@ -1,34 +1,112 @@
 package mrearsbig.cashcard;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/cashcards")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class CashCardController {
+    static final String NEXT_CURSOR_HEADER = "Next-Cursor";
+    private static final Duration ASYNC_TIMEOUT_MARGIN = Duration.ofSeconds(10);
+
     private final CashCardRepository cashCardRepository;
+    private final CashCardCache cashCardCache;
+    private final CashCardWriteBehind writeBehind;
+    private final CashCardChangeFeed changeFeed;
+    private final ObjectWriter exportWriter;
+    private final int batchMaximumSize;
+    private final int changesMaximumPageSize;
+    private final Duration changesMaximumWait;
+    private final Duration changesHeartbeatInterval;
+    private final Duration changesStreamTimeout;
 
-    private CashCardController(CashCardRepository cashCardRepository) {
+    private CashCardController(CashCardRepository cashCardRepository, CashCardCache cashCardCache,
+            ObjectProvider<CashCardWriteBehind> writeBehind, ObjectProvider<CashCardChangeFeed> changeFeed,
+            ObjectMapper objectMapper,
+            @Value("${cashcard.batch.maximum-size}") int batchMaximumSize,
+            @Value("${cashcard.changes.maximum-page-size}") int changesMaximumPageSize,
+            @Value("${cashcard.changes.maximum-wait}") Duration changesMaximumWait,
+            @Value("${cashcard.changes.heartbeat-interval}") Duration changesHeartbeatInterval,
+            @Value("${cashcard.changes.stream-timeout}") Duration changesStreamTimeout) {
         this.cashCardRepository = cashCardRepository;
+        this.cashCardCache = cashCardCache;
+        this.writeBehind = writeBehind.getIfAvailable();
+        this.changeFeed = changeFeed.getIfAvailable();
+        this.exportWriter = objectMapper.writerFor(CashCard.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        this.batchMaximumSize = batchMaximumSize;
+        this.changesMaximumPageSize = changesMaximumPageSize;
+        this.changesMaximumWait = changesMaximumWait;
+        this.changesHeartbeatInterval = changesHeartbeatInterval;
+        this.changesStreamTimeout = changesStreamTimeout;
     }
 
     private CashCard findCashCard(Long id, Principal principal) {
-        return cashCardRepository.findByIdAndOwner(id, principal.getName());
+        // With write-behind on, a pending mutation wins over the table and the cache.
+        if (writeBehind != null) {
+            return writeBehind.findByIdAndOwner(id, principal.getName(),
+                    () -> cashCardCache.findByIdAndOwner(id, principal.getName()));
+        }
+        return cashCardCache.findByIdAndOwner(id, principal.getName());
+    }
+
+    private void awaitWriteBehind() {
+        // Writes that do not go through the journal wait for it to drain, so they
+        // never race a pending mutation to the same row.
+        if (writeBehind != null) {
+            writeBehind.awaitApplied();
+        }
+    }
+
+    private void changed(Principal principal) {
+        // Wakes the owner's long-polling and streaming change-feed requests now
+        // that the write has committed.
+        if (changeFeed != null) {
+            changeFeed.changed(principal.getName());
+        }
     }
 
     @GetMapping("/{id}")
@@ -39,14 +117,22 @@ public class CashCardController {
             return ResponseEntity.notFound().build();
         }
 
-        return ResponseEntity.ok(cashCard);
+        // With an ETag on a 200 response, Spring answers a matching If-None-Match
+        // with 304 and never serializes the body. A card with a write still pending
+        // has no version yet, so it gets no ETag.
+        if (cashCard.version() == null) {
+            return ResponseEntity.ok(cashCard);
+        }
+        return ResponseEntity.ok().eTag(cashCard.eTag()).body(cashCard);
     }
 
     @PostMapping
     private ResponseEntity<Void> createCashCard(@RequestBody CashCard cashCard,
             UriComponentsBuilder uriComponentsBuilder, Principal principal) {
-        CashCard cashCardWithOwner = new CashCard(null, cashCard.amount(), principal.getName());
-        CashCard savedCashCard = cashCardRepository.save(cashCardWithOwner);
+        CashCard savedCashCard = writeBehind != null
+                ? writeBehind.create(cashCard.amount(), principal.getName())
+                : cashCardRepository.save(new CashCard(null, cashCard.amount(), principal.getName()));
+        changed(principal);
 
         URI location = uriComponentsBuilder
                 .path("/cashcards/{id}")
@@ -57,36 +143,338 @@ public class CashCardController {
     }
 
     @GetMapping
-    private ResponseEntity<List<CashCard>> findAll(Pageable pageable, Principal principal) {
+    private ResponseEntity<List<CashCard>> findAll(Pageable pageable,
+            @RequestParam(required = false) String after, Principal principal) {
+        if (after != null) {
+            return findAllAfter(after, pageable, principal);
+        }
+
         Page<CashCard> page = cashCardRepository
                 .findByOwner(principal.getName(), PageRequest.of(
                         pageable.getPageNumber(),
                         pageable.getPageSize(),
                         pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount"))));
-        return ResponseEntity.ok(page.getContent());
+        return ResponseEntity.ok().eTag(listETag(page.getContent())).body(page.getContent());
+    }
+
+    private ResponseEntity<List<CashCard>> findAllAfter(String after, Pageable pageable, Principal principal) {
+        // Cursor mode: an empty "after" asks for the first page, otherwise it is the
+        // token returned in the Next-Cursor header of the previous page.
+        Sort sort = pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount"));
+        List<Sort.Order> orders = sort.toList();
+        if (orders.size() != 1 || !CashCardCursor.SORTABLE_PROPERTIES.contains(orders.get(0).getProperty())) {
+            return ResponseEntity.badRequest().build();
+        }
+        Sort.Order order = orders.get(0);
+
+        CashCardCursor cursor = null;
+        if (!after.isEmpty()) {
+            try {
+                cursor = CashCardCursor.decode(after);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            if (!cursor.order().equals(order)) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
+        Slice<CashCard> slice = cashCardRepository
+                .findByOwnerAfter(principal.getName(), order, cursor, pageable.getPageSize());
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(listETag(slice.getContent()));
+        if (slice.hasNext()) {
+            CashCard last = slice.getContent().get(slice.getNumberOfElements() - 1);
+            response.header(NEXT_CURSOR_HEADER, CashCardCursor.after(last, order).encode());
+        }
+        return response.body(slice.getContent());
+    }
+
+    @GetMapping("/summary")
+    private ResponseEntity<CashCardSummary> findSummary(Principal principal) {
+        // Served from the owner's maintained aggregates instead of paging through
+        // every card; pending write-behind mutations show up once applied.
+        return ResponseEntity.ok(cashCardRepository.findSummaryByOwner(principal.getName()));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    private void exportCashCards(Principal principal, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        OutputStream outputStream = response.getOutputStream();
+
+        // Rows are written to the response as the cursor reads them; the servlet
+        // buffer flushes to the client whenever it fills up.
+        cashCardRepository.streamByOwner(principal.getName(), cashCard -> {
+            try {
+                exportWriter.writeValue(outputStream, cashCard);
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @GetMapping("/changes")
+    private DeferredResult<ResponseEntity<CashCardChanges>> findChanges(@RequestParam(required = false) Long since,
+            @RequestParam(defaultValue = "0") long wait, @RequestParam(defaultValue = "100") int limit,
+            Principal principal) {
+        // Without "since" the response only carries the owner's latest sequence:
+        // a client takes it before downloading its cards, then asks for changes
+        // since it. With "wait" (seconds), an empty answer is held back until a
+        // change arrives or the time is up.
+        Duration timeout = Duration.ofSeconds(Math.max(wait, 0));
+        DeferredResult<ResponseEntity<CashCardChanges>> result =
+                new DeferredResult<>(timeout.plus(ASYNC_TIMEOUT_MARGIN).toMillis());
+        if (changeFeed == null) {
+            result.setResult(ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build());
+            return result;
+        }
+        if (limit < 1 || limit > changesMaximumPageSize || wait < 0 || timeout.compareTo(changesMaximumWait) > 0) {
+            result.setResult(ResponseEntity.badRequest().build());
+            return result;
+        }
+        String owner = principal.getName();
+        if (since == null) {
+            result.setResult(ResponseEntity.ok(new CashCardChanges(List.of(), changeFeed.lastSequence(owner))));
+            return result;
+        }
+
+        CompletableFuture<CashCardChanges> changes = timeout.isZero()
+                ? CompletableFuture.completedFuture(changeFeed.read(owner, since, limit))
+                : changeFeed.awaitChanges(owner, since, limit, timeout);
+        changes.whenComplete((page, failure) -> {
+            if (failure != null) {
+                result.setErrorResult(failure);
+            } else if (page.continueFrom(since)) {
+                result.setResult(ResponseEntity.ok(page));
+            } else {
+                // Changes after "since" were compacted (or never existed):
+                // the client has to download its cards again.
+                result.setResult(ResponseEntity.status(HttpStatus.GONE).build());
+            }
+        });
+        result.onCompletion(() -> changes.cancel(false));
+        return result;
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    private ResponseEntity<SseEmitter> streamChanges(@RequestParam(required = false) Long since,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId, Principal principal) {
+        if (changeFeed == null) {
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+        }
+        // A reconnecting EventSource resumes after the last event it received.
+        String owner = principal.getName();
+        long position = lastEventId != null ? lastEventId
+                : since != null ? since : changeFeed.lastSequence(owner);
+        CashCardChanges first = changeFeed.read(owner, position, changesMaximumPageSize);
+        if (!first.continueFrom(position)) {
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        CashCardChangeStream stream = new CashCardChangeStream(changeFeed, owner, position, changesMaximumPageSize,
+                changesHeartbeatInterval, changesStreamTimeout);
+        return ResponseEntity.ok(stream.start(first));
     }
 
     @PutMapping("/{id}")
     private ResponseEntity<Void> putCashCard(@PathVariable Long id, @RequestBody CashCard cashCardUpdate,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch, Principal principal) {
+        if (ifMatch != null && !ifMatch.trim().equals("*")) {
+            return putCashCardIfMatch(id, cashCardUpdate, ifMatch, principal);
+        }
+
+        // One owner-scoped UPDATE: the affected-row count tells a missing or
+        // foreign card apart without a lookup before the write.
+        int updated = writeBehind != null
+                ? writeBehind.updateAmountByIdAndOwner(id, principal.getName(), cashCardUpdate.amount())
+                : cashCardRepository.updateAmountByIdAndOwner(id, principal.getName(), cashCardUpdate.amount());
+        cashCardCache.invalidate(id, principal.getName());
+        changed(principal);
+
+        if (updated > 0) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    private ResponseEntity<Void> putCashCardIfMatch(Long id, CashCard cashCardUpdate, String ifMatch,
             Principal principal) {
-        CashCard cashCard = findCashCard(id, principal);
+        // A single conditional UPDATE: it only applies when the version the client
+        // last saw is still current, so concurrent writers cannot lose updates.
+        Long version = parseVersion(ifMatch);
+        if (version == null) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
 
-        if (cashCard != null) {
-            CashCard updatedCashCard = new CashCard(cashCard.id(), cashCardUpdate.amount(), principal.getName());
-            cashCardRepository.save(updatedCashCard);
+        awaitWriteBehind();
+
+        int updated = cashCardRepository.updateAmountByIdAndOwnerAndVersion(id, principal.getName(),
+                cashCardUpdate.amount(), version);
+        cashCardCache.invalidate(id, principal.getName());
+        changed(principal);
+
+        if (updated > 0) {
+            return ResponseEntity.noContent().eTag("\"" + (version + 1) + "\"").build();
+        }
+        if (cashCardRepository.existsByIdAndOwner(id, principal.getName())) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/{id}/credit")
+    private ResponseEntity<Void> creditCashCard(@PathVariable Long id, @RequestBody CashCard credit,
+            Principal principal) {
+        if (!isPositive(credit.amount())) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // The balance changes inside one UPDATE, so concurrent credits and debits
+        // cannot overwrite each other and the client needs no prior GET.
+        awaitWriteBehind();
+        int updated = cashCardRepository.creditByIdAndOwner(id, principal.getName(), credit.amount());
+        cashCardCache.invalidate(id, principal.getName());
+        changed(principal);
+
+        if (updated > 0) {
             return ResponseEntity.noContent().build();
         }
+        return ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/{id}/debit")
+    private ResponseEntity<Void> debitCashCard(@PathVariable Long id, @RequestBody CashCard debit,
+            Principal principal) {
+        if (!isPositive(debit.amount())) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        awaitWriteBehind();
+        int updated = cashCardRepository.debitByIdAndOwner(id, principal.getName(), debit.amount());
+        cashCardCache.invalidate(id, principal.getName());
+        changed(principal);
 
+        if (updated > 0) {
+            return ResponseEntity.noContent().build();
+        }
+        // Only on failure: tell an unknown card apart from insufficient funds.
+        if (cashCardRepository.existsByIdAndOwner(id, principal.getName())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
         return ResponseEntity.notFound().build();
     }
 
     @DeleteMapping("/{id}")
     private ResponseEntity<Void> deleteCashCard(@PathVariable Long id, Principal principal) {
-        if (cashCardRepository.existsByIdAndOwner(id, principal.getName())) {
-            cashCardRepository.deleteById(id);
+        int deleted = writeBehind != null
+                ? writeBehind.deleteByIdAndOwner(id, principal.getName())
+                : cashCardRepository.deleteByIdAndOwner(id, principal.getName());
+        cashCardCache.invalidate(id, principal.getName());
+        changed(principal);
+
+        if (deleted > 0) {
             return ResponseEntity.noContent().build();
         }
-
         return ResponseEntity.notFound().build();
     }
+
+    @PostMapping("/batch")
+    private ResponseEntity<List<CashCardBatchResult>> createCashCards(@RequestBody List<CashCard> cashCards,
+            Principal principal) {
+        if (cashCards.size() > batchMaximumSize) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<CashCard> cashCardsWithOwner = cashCards.stream()
+                .map(cashCard -> new CashCard(null, cashCard.amount(), principal.getName()))
+                .toList();
+
+        // saveAll sends the inserts as one JDBC batch inside a single transaction.
+        awaitWriteBehind();
+        List<CashCardBatchResult> results = new ArrayList<>(cashCards.size());
+        for (CashCard savedCashCard : cashCardRepository.saveAll(cashCardsWithOwner)) {
+            results.add(new CashCardBatchResult(savedCashCard.id(), HttpStatus.CREATED.value()));
+        }
+        changed(principal);
+
+        return ResponseEntity.ok(results);
+    }
+
+    @PutMapping("/batch")
+    private ResponseEntity<List<CashCardBatchResult>> putCashCards(@RequestBody List<CashCard> cashCardUpdates,
+            Principal principal) {
+        if (cashCardUpdates.size() > batchMaximumSize
+                || cashCardUpdates.stream().anyMatch(cashCard -> cashCard.id() == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        awaitWriteBehind();
+        int[] updateCounts = cashCardRepository.updateAmountsByOwner(cashCardUpdates, principal.getName());
+        cashCardCache.invalidateAll(cashCardUpdates.stream().map(CashCard::id).toList(), principal.getName());
+        changed(principal);
+
+        List<CashCardBatchResult> results = new ArrayList<>(cashCardUpdates.size());
+        for (int i = 0; i < cashCardUpdates.size(); i++) {
+            results.add(batchResult(cashCardUpdates.get(i).id(), updateCounts[i]));
+        }
+
+        return ResponseEntity.ok(results);
+    }
+
+    @DeleteMapping("/batch")
+    private ResponseEntity<List<CashCardBatchResult>> deleteCashCards(@RequestBody List<Long> ids,
+            Principal principal) {
+        if (ids.size() > batchMaximumSize || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        awaitWriteBehind();
+        int[] deleteCounts = cashCardRepository.deleteAllByIdsAndOwner(ids, principal.getName());
+        cashCardCache.invalidateAll(ids, principal.getName());
+        changed(principal);
+
+        List<CashCardBatchResult> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            results.add(batchResult(ids.get(i), deleteCounts[i]));
+        }
+
+        return ResponseEntity.ok(results);
+    }
+
+    @ExceptionHandler(ResponseStatusException.class)
+    private ResponseEntity<Void> handleResponseStatus(ResponseStatusException e) {
+        // Answered here rather than through the /error dispatch, which no
+        // security rule permits.
+        return ResponseEntity.status(e.getStatusCode()).build();
+    }
+
+    static CashCardBatchResult batchResult(Long id, int affectedRows) {
+        HttpStatus status = affectedRows > 0 ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND;
+        return new CashCardBatchResult(id, status.value());
+    }
+
+    static String listETag(List<CashCard> cashCards) {
+        StringBuilder versions = new StringBuilder();
+        for (CashCard cashCard : cashCards) {
+            versions.append(cashCard.id()).append(':').append(cashCard.version()).append(',');
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(versions.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    static Long parseVersion(String ifMatch) {
+        // If-Match uses the strong comparison, so weak validators never match.
+        String eTag = ifMatch.trim();
+        if (eTag.length() < 3 || !eTag.startsWith("\"") || !eTag.endsWith("\"")) {
+            return null;
+        }
+        try {
+            return Long.valueOf(eTag.substring(1, eTag.length() - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static boolean isPositive(BigDecimal amount) {
+        return amount != null && amount.signum() > 0;
+    }
 }
@@ -0,0 +1,39 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Set;
+import org.springframework.data.domain.Sort;
+
+public record CashCardCursor(Sort.Order order, BigDecimal amount, Long id) {
+
+    // This record is the keyset position used by cursor pagination: the sort the
+    // client asked for plus the sort key and id of the last card it received.
+    // Clients only ever see it as an opaque token.
+
+    static final Set<String> SORTABLE_PROPERTIES = Set.of("amount", "id");
+
+    public static CashCardCursor after(CashCard cashCard, Sort.Order order) {
+        return new CashCardCursor(order, cashCard.amount(), cashCard.id());
+    }
+
+    public static CashCardCursor decode(String token) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(":", 4);
+            if (parts.length != 4 || !SORTABLE_PROPERTIES.contains(parts[0])) {
+                throw new IllegalArgumentException("Malformed cursor: " + token);
+            }
+            Sort.Order order = new Sort.Order(Sort.Direction.valueOf(parts[1]), parts[0]);
+            return new CashCardCursor(order, new BigDecimal(parts[2]), Long.valueOf(parts[3]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor: " + token, e);
+        }
+    }
+
+    public String encode() {
+        String token = order.getProperty() + ":" + order.getDirection() + ":" + amount.toPlainString() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,278 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes {@link CashCard} and {@code List<CashCard>} response bodies straight
+ * into a pooled byte buffer, producing exactly the bytes Jackson would for the
+ * same values. Reading, and every other type, is left to Jackson.
+ */
+@Component
+public class CashCardHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int POOLED_BUFFERS = 64;
+    private static final int MAX_COMPACT_PRECISION = 18;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] ID_FIELD = "{\"id\":".getBytes();
+    private static final byte[] AMOUNT_FIELD = ",\"amount\":".getBytes();
+    private static final byte[] OWNER_FIELD = ",\"owner\":".getBytes();
+
+    private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+    public CashCardHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return CashCard.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (!canWrite(mediaType)) {
+            return false;
+        }
+        if (type instanceof ParameterizedType parameterizedType
+                && parameterizedType.getRawType() instanceof Class<?> rawType
+                && Collection.class.isAssignableFrom(rawType)) {
+            return parameterizedType.getActualTypeArguments()[0] == CashCard.class;
+        }
+        return CashCard.class == clazz;
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("CashCard bodies are read by Jackson", inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("CashCard bodies are read by Jackson", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        try {
+            Output output = new Output(buffer, outputMessage.getBody());
+            if (body instanceof CashCard cashCard) {
+                output.writeCashCard(cashCard);
+            } else if (body instanceof Collection<?> cashCards) {
+                output.writeCashCards(cashCards);
+            } else {
+                throw new HttpMessageNotWritableException("Unexpected body type " + body.getClass().getName());
+            }
+            output.flush();
+        } finally {
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Encodes into the buffer and hands it to the stream whenever it fills up.
+     * One instance per response; the buffer goes back to the pool afterwards.
+     */
+    private static final class Output {
+        private final byte[] buffer;
+        private final OutputStream out;
+        private int position;
+
+        Output(byte[] buffer, OutputStream out) {
+            this.buffer = buffer;
+            this.out = out;
+        }
+
+        void writeCashCards(Collection<?> cashCards) throws IOException {
+            writeByte('[');
+            boolean first = true;
+            for (Object cashCard : cashCards) {
+                if (!first) {
+                    writeByte(',');
+                }
+                first = false;
+                if (cashCard == null) {
+                    writeBytes(NULL);
+                } else {
+                    writeCashCard((CashCard) cashCard);
+                }
+            }
+            writeByte(']');
+        }
+
+        void writeCashCard(CashCard cashCard) throws IOException {
+            writeBytes(ID_FIELD);
+            if (cashCard.id() == null) {
+                writeBytes(NULL);
+            } else {
+                writeLong(cashCard.id());
+            }
+            writeBytes(AMOUNT_FIELD);
+            writeAmount(cashCard.amount());
+            writeBytes(OWNER_FIELD);
+            writeString(cashCard.owner());
+            writeByte('}');
+        }
+
+        void flush() throws IOException {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+
+        private void writeAmount(BigDecimal amount) throws IOException {
+            if (amount == null) {
+                writeBytes(NULL);
+                return;
+            }
+            // Amounts are always stored with two decimals, which fit in a long
+            // for any realistic balance; anything else falls back to the same
+            // toString() Jackson uses.
+            if (amount.scale() != CashCard.AMOUNT_SCALE || amount.precision() > MAX_COMPACT_PRECISION) {
+                writeAscii(amount.toString());
+                return;
+            }
+            long unscaled = amount.unscaledValue().longValue();
+            if (unscaled < 0) {
+                writeByte('-');
+                unscaled = -unscaled;
+            }
+            writeLong(unscaled / 100);
+            writeByte('.');
+            int cents = (int) (unscaled % 100);
+            writeByte('0' + cents / 10);
+            writeByte('0' + cents % 10);
+        }
+
+        private void writeLong(long value) throws IOException {
+            if (value == Long.MIN_VALUE) {
+                writeAscii(Long.toString(value));
+                return;
+            }
+            if (value < 0) {
+                writeByte('-');
+                value = -value;
+            }
+            ensureCapacity(20);
+            int digits = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            int end = position + digits;
+            for (int i = end - 1; i >= position; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position = end;
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeBytes(NULL);
+                return;
+            }
+            writeByte('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                    writeByte(c);
+                } else if (c < 0x80) {
+                    writeEscaped(c);
+                } else if (c < 0x800) {
+                    writeByte(0xC0 | (c >> 6));
+                    writeByte(0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    writeByte(0xF0 | (codePoint >> 18));
+                    writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                    writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                    writeByte(0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    writeByte('?');
+                } else {
+                    writeByte(0xE0 | (c >> 12));
+                    writeByte(0x80 | ((c >> 6) & 0x3F));
+                    writeByte(0x80 | (c & 0x3F));
+                }
+            }
+            writeByte('"');
+        }
+
+        private void writeEscaped(char c) throws IOException {
+            // Same escapes as Jackson's default: two-character forms where JSON
+            // has one, a six-character escape with upper-case hex for the other control characters.
+            writeByte('\\');
+            switch (c) {
+                case '"' -> writeByte('"');
+                case '\\' -> writeByte('\\');
+                case '\b' -> writeByte('b');
+                case '\t' -> writeByte('t');
+                case '\n' -> writeByte('n');
+                case '\f' -> writeByte('f');
+                case '\r' -> writeByte('r');
+                default -> {
+                    writeByte('u');
+                    writeByte('0');
+                    writeByte('0');
+                    writeByte(HEX[c >> 4]);
+                    writeByte(HEX[c & 0xF]);
+                }
+            }
+        }
+
+        private void writeAscii(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                writeByte(value.charAt(i));
+            }
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void writeByte(int b) throws IOException {
+            if (position == buffer.length) {
+                flush();
+            }
+            buffer[position++] = (byte) b;
+        }
+
+        private void ensureCapacity(int length) throws IOException {
+            if (buffer.length - position < length) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package mrearsbig.cashcard;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * Time-ordered, node-unique ids in the style of Snowflake, for cards whose id
+ * has to be known before the database row exists. The layout is sized so every
+ * id stays below 2^53 and survives a round trip through JavaScript numbers:
+ * 43 bits of milliseconds since 2024-01-01, 4 bits of node id and 6 bits of
+ * per-millisecond sequence.
+ */
+class CashCardIdGenerator {
+    static final int NODE_BITS = 4;
+    static final int SEQUENCE_BITS = 6;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    private final Clock clock;
+    private final long nodeId;
+    private long lastTimestamp = -1;
+    private long sequence;
+
+    CashCardIdGenerator(int nodeId) {
+        this(Clock.systemUTC(), nodeId);
+    }
+
+    CashCardIdGenerator(Clock clock, int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.clock = clock;
+        this.nodeId = nodeId;
+    }
+
+    synchronized long nextId() {
+        // A clock that steps backwards reuses the last timestamp instead of
+        // handing out ids that could collide with ones already issued.
+        long timestamp = Math.max(clock.millis() - EPOCH, lastTimestamp);
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & MAX_SEQUENCE;
+            if (sequence == 0) {
+                timestamp = waitForNextMillisecond(timestamp);
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTimestamp = timestamp;
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    private long waitForNextMillisecond(long timestamp) {
+        long next = clock.millis() - EPOCH;
+        while (next <= timestamp) {
+            Thread.onSpinWait();
+            next = clock.millis() - EPOCH;
+        }
+        return next;
+    }
+}
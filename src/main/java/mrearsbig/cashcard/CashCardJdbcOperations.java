@@ -0,0 +1,16 @@
+package mrearsbig.cashcard;
+
+import java.util.List;
+import java.util.function.Consumer;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+public interface CashCardJdbcOperations {
+    // This interface is a Spring Data repository fragment for the queries that
+    // need plain JDBC, such as batched writes. Every statement is owner-scoped.
+    int[] updateAmountsByOwner(List<CashCard> cashCards, String owner);
+    int[] deleteAllByIdsAndOwner(List<Long> ids, String owner);
+    void streamByOwner(String owner, Consumer<CashCard> consumer);
+    Slice<CashCard> findByOwnerAfter(String owner, Sort.Order order, CashCardCursor cursor, int size);
+    CashCardSummary findSummaryByOwner(String owner);
+}
@@ -0,0 +1,139 @@
+package mrearsbig.cashcard;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.annotation.Transactional;
+
+class CashCardJdbcOperationsImpl implements CashCardJdbcOperations {
+    private static final String UPDATE_AMOUNT = """
+            UPDATE cash_card SET amount = :amount, version = version + 1 WHERE id = :id AND owner = :owner""";
+    private static final String DELETE = """
+            DELETE FROM cash_card WHERE id = :id AND owner = :owner""";
+    private static final String SELECT_BY_OWNER = """
+            SELECT id, amount, owner, version FROM cash_card WHERE owner = ? ORDER BY id""";
+    private static final String SELECT_SUMMARY = """
+            SELECT owner, card_count, total_amount, min_amount, max_amount FROM cash_card_summary
+            WHERE owner = :owner""";
+
+    private final NamedParameterJdbcOperations jdbcOperations;
+    private final int exportFetchSize;
+
+    CashCardJdbcOperationsImpl(NamedParameterJdbcOperations jdbcOperations,
+            @Value("${cashcard.export.fetch-size}") int exportFetchSize) {
+        this.jdbcOperations = jdbcOperations;
+        this.exportFetchSize = exportFetchSize;
+    }
+
+    @Override
+    @Transactional
+    public int[] updateAmountsByOwner(List<CashCard> cashCards, String owner) {
+        // The owner is part of every statement, so cards that belong to someone
+        // else simply report zero affected rows.
+        SqlParameterSource[] batch = cashCards.stream()
+                .map(cashCard -> new MapSqlParameterSource()
+                        .addValue("id", cashCard.id())
+                        .addValue("amount", cashCard.amount())
+                        .addValue("owner", owner))
+                .toArray(SqlParameterSource[]::new);
+        return jdbcOperations.batchUpdate(UPDATE_AMOUNT, batch);
+    }
+
+    @Override
+    @Transactional
+    public int[] deleteAllByIdsAndOwner(List<Long> ids, String owner) {
+        SqlParameterSource[] batch = ids.stream()
+                .map(id -> new MapSqlParameterSource()
+                        .addValue("id", id)
+                        .addValue("owner", owner))
+                .toArray(SqlParameterSource[]::new);
+        return jdbcOperations.batchUpdate(DELETE, batch);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamByOwner(String owner, Consumer<CashCard> consumer) {
+        // A forward-only, read-only cursor with a bounded fetch size keeps memory
+        // flat no matter how many cards the owner has: each row is handed to the
+        // consumer as soon as it is read and never collected into a list.
+        jdbcOperations.getJdbcOperations().query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_BY_OWNER,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(exportFetchSize);
+            statement.setString(1, owner);
+            return statement;
+        }, resultSet -> {
+            consumer.accept(mapCashCard(resultSet));
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<CashCard> findByOwnerAfter(String owner, Sort.Order order, CashCardCursor cursor, int size) {
+        // Keyset pagination: instead of skipping OFFSET rows and counting the total,
+        // continue strictly after the last card the client saw. The id tie-breaker
+        // follows the sort direction so the (owner, amount, id) index can be walked
+        // in either direction, and one extra row tells us whether there is a next page.
+        String direction = order.isAscending() ? "ASC" : "DESC";
+        String comparison = order.isAscending() ? ">" : "<";
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("owner", owner)
+                .addValue("limit", size + 1);
+
+        StringBuilder sql = new StringBuilder("SELECT id, amount, owner, version FROM cash_card WHERE owner = :owner");
+        switch (order.getProperty()) {
+            case "amount" -> {
+                if (cursor != null) {
+                    sql.append(" AND (amount, id) ").append(comparison).append(" (:amount, :id)");
+                    parameters.addValue("amount", cursor.amount()).addValue("id", cursor.id());
+                }
+                sql.append(" ORDER BY amount ").append(direction).append(", id ").append(direction);
+            }
+            case "id" -> {
+                if (cursor != null) {
+                    sql.append(" AND id ").append(comparison).append(" :id");
+                    parameters.addValue("id", cursor.id());
+                }
+                sql.append(" ORDER BY id ").append(direction);
+            }
+            default -> throw new IllegalArgumentException("Unsupported cursor sort: " + order.getProperty());
+        }
+        sql.append(" FETCH FIRST :limit ROWS ONLY");
+
+        List<CashCard> cashCards = jdbcOperations.query(sql.toString(), parameters,
+                (resultSet, rowNum) -> mapCashCard(resultSet));
+        boolean hasNext = cashCards.size() > size;
+        return new SliceImpl<>(hasNext ? cashCards.subList(0, size) : cashCards,
+                PageRequest.of(0, size, Sort.by(order)), hasNext);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CashCardSummary findSummaryByOwner(String owner) {
+        // One primary-key lookup; CashCardSummaryTrigger keeps the row current.
+        List<CashCardSummary> summaries = jdbcOperations.query(SELECT_SUMMARY,
+                new MapSqlParameterSource("owner", owner), (resultSet, rowNum) -> mapSummary(resultSet));
+        return summaries.isEmpty() ? CashCardSummary.empty(owner) : summaries.get(0);
+    }
+
+    static CashCardSummary mapSummary(ResultSet resultSet) throws SQLException {
+        return new CashCardSummary(resultSet.getString("owner"), resultSet.getLong("card_count"),
+                resultSet.getBigDecimal("total_amount"), resultSet.getBigDecimal("min_amount"),
+                resultSet.getBigDecimal("max_amount"));
+    }
+
+    static CashCard mapCashCard(ResultSet resultSet) throws SQLException {
+        return new CashCard(resultSet.getLong("id"), resultSet.getBigDecimal("amount"), resultSet.getString("owner"),
+                resultSet.getLong("version"));
+    }
+}
@@ -0,0 +1,259 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped journal of acknowledged cash card mutations that have not yet
+ * reached the {@code cash_card} table.
+ *
+ * <p>Appending only copies the entry into the mapping. Durability comes from
+ * group commit: the first thread waiting for its entry becomes the leader,
+ * forces everything appended so far in one {@code msync}, and wakes every
+ * entry that call covered. The header records the last sequence applied to the
+ * database. Once everything is applied, writing starts again at the front of
+ * the file. Entries carry consecutive sequence numbers and a CRC, so replay
+ * stops at the first torn or stale entry.
+ */
+class CashCardJournal implements AutoCloseable {
+    static final byte CREATE = 1;
+    static final byte UPDATE = 2;
+    static final byte DELETE = 3;
+
+    private static final int MAGIC = 0x43434A31;
+    private static final int HEADER_SIZE = 64;
+    private static final int CHECKPOINT_OFFSET = Integer.BYTES;
+    private static final int ENTRY_OVERHEAD = Integer.BYTES + Long.BYTES + 1 + 2 * Long.BYTES + Short.BYTES
+            + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition durable = lock.newCondition();
+    private final Condition applied = lock.newCondition();
+    private final ArrayDeque<Entry> unapplied = new ArrayDeque<>();
+    private int position = HEADER_SIZE;
+    private int flushedPosition = HEADER_SIZE;
+    private long lastSequence;
+    private long durableSequence;
+    private long checkpoint;
+    private boolean flushing;
+
+    record Entry(long sequence, byte type, long id, long amountCents, String owner) {
+    }
+
+    CashCardJournal(Path file, int capacity) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putLong(CHECKPOINT_OFFSET, 0);
+            buffer.putInt(0, MAGIC);
+            buffer.force(0, HEADER_SIZE);
+        }
+        recover();
+    }
+
+    /** Entries that were durable but not yet applied when the journal was last closed, in order. */
+    List<Entry> unapplied() {
+        lock.lock();
+        try {
+            return new ArrayList<>(unapplied);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies an entry into the journal and returns its sequence. It is not
+     * durable until {@link #awaitDurable(long)} returns for that sequence. When
+     * the file is full, this waits until the applier has drained it.
+     */
+    long append(byte type, long id, long amountCents, String owner) throws InterruptedException {
+        byte[] ownerBytes = owner.getBytes(StandardCharsets.UTF_8);
+        int length = ENTRY_OVERHEAD + ownerBytes.length;
+        lock.lock();
+        try {
+            if (HEADER_SIZE + length > buffer.capacity()) {
+                throw new IllegalArgumentException("Journal entry does not fit in the journal");
+            }
+            while (position + length > buffer.capacity()) {
+                applied.await();
+            }
+            long sequence = ++lastSequence;
+            crc.reset();
+            int start = position;
+            buffer.putInt(start, length);
+            buffer.putLong(start + 4, sequence);
+            buffer.put(start + 12, type);
+            buffer.putLong(start + 13, id);
+            buffer.putLong(start + 21, amountCents);
+            buffer.putShort(start + 29, (short) ownerBytes.length);
+            buffer.put(start + 31, ownerBytes);
+            crc.update(buffer.slice(start + 4, length - 8));
+            buffer.putInt(start + length - 4, (int) crc.getValue());
+            position += length;
+            unapplied.add(new Entry(sequence, type, id, amountCents, owner));
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void awaitDurable(long sequence) throws InterruptedException {
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (flushing) {
+                    durable.await();
+                    continue;
+                }
+                // Leader: one force covers every entry appended by now, including
+                // those of the threads queued behind us.
+                flushing = true;
+                long target = lastSequence;
+                int from = flushedPosition;
+                int to = position;
+                boolean forced = false;
+                lock.unlock();
+                try {
+                    buffer.force(from, to - from);
+                    forced = true;
+                } finally {
+                    lock.lock();
+                    flushing = false;
+                    if (forced) {
+                        durableSequence = Math.max(durableSequence, target);
+                        flushedPosition = Math.max(flushedPosition, to);
+                    }
+                    durable.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Durable entries the applier may write to the database, oldest first. */
+    List<Entry> durableUnapplied(int maximum) {
+        lock.lock();
+        try {
+            List<Entry> entries = new ArrayList<>(Math.min(maximum, unapplied.size()));
+            for (Entry entry : unapplied) {
+                if (entry.sequence() > durableSequence || entries.size() == maximum) {
+                    break;
+                }
+                entries.add(entry);
+            }
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records that every entry up to {@code sequence} is in the database. */
+    void checkpoint(long sequence) {
+        lock.lock();
+        try {
+            while (!unapplied.isEmpty() && unapplied.peekFirst().sequence() <= sequence) {
+                unapplied.removeFirst();
+            }
+            checkpoint = Math.max(checkpoint, sequence);
+            buffer.putLong(CHECKPOINT_OFFSET, checkpoint);
+            buffer.force(0, HEADER_SIZE);
+            if (unapplied.isEmpty() && durableSequence == lastSequence) {
+                position = HEADER_SIZE;
+                flushedPosition = HEADER_SIZE;
+            }
+            applied.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long lastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every entry up to {@code sequence} is in the database, for at
+     * most {@code timeout}; returns whether it got there.
+     */
+    boolean awaitCheckpoint(long sequence, Duration timeout) throws InterruptedException {
+        long nanos = timeout.toNanos();
+        lock.lock();
+        try {
+            while (checkpoint < sequence) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = applied.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            buffer.force();
+        } finally {
+            lock.unlock();
+        }
+        channel.close();
+    }
+
+    private void recover() {
+        checkpoint = buffer.getLong(CHECKPOINT_OFFSET);
+        long previous = -1;
+        int offset = HEADER_SIZE;
+        while (offset + Integer.BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length < ENTRY_OVERHEAD || offset + length > buffer.capacity()) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(offset + 4, length - 8));
+            long sequence = buffer.getLong(offset + 4);
+            if (buffer.getInt(offset + length - 4) != (int) crc.getValue()
+                    || (previous >= 0 && sequence != previous + 1)) {
+                break;
+            }
+            if (sequence > checkpoint) {
+                byte[] ownerBytes = new byte[buffer.getShort(offset + 29) & 0xFFFF];
+                buffer.get(offset + 31, ownerBytes);
+                unapplied.add(new Entry(sequence, buffer.get(offset + 12), buffer.getLong(offset + 13),
+                        buffer.getLong(offset + 21), new String(ownerBytes, StandardCharsets.UTF_8)));
+            }
+            previous = sequence;
+            offset += length;
+        }
+        lastSequence = Math.max(checkpoint, previous);
+        durableSequence = lastSequence;
+        // With nothing left to apply, new entries can start at the front again.
+        position = unapplied.isEmpty() ? HEADER_SIZE : offset;
+        flushedPosition = position;
+    }
+}
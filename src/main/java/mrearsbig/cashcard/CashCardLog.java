@@ -0,0 +1,258 @@
+package mrearsbig.cashcard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durability for {@link MemoryCashCardRepository}: an append-only log of card
+ * states plus a periodic snapshot that lets the log be truncated.
+ *
+ * <p>Every record carries the full state of one card (or its deletion) and a
+ * CRC, so replaying a record twice is harmless and a torn record at the end of
+ * the log is detected and cut off. A snapshot is written to a temporary file,
+ * forced and atomically renamed before the log is truncated; a crash in between
+ * just replays a log whose effects the snapshot already contains.
+ *
+ * <p>A log without a directory keeps nothing on disk, which is what tests and
+ * benchmarks that only care about the in-memory engine use.
+ */
+class CashCardLog implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CashCardLog.class);
+
+    private static final String LOG_FILE = "cashcards.log";
+    private static final String SNAPSHOT_FILE = "cashcards.snapshot";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte MAX_ID = 3;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path directory;
+    private final long snapshotThreshold;
+    private final boolean fsync;
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private DataOutputStream out;
+    private long records;
+
+    CashCardLog(Path directory, long snapshotThreshold, boolean fsync) {
+        this.directory = directory;
+        this.snapshotThreshold = snapshotThreshold;
+        this.fsync = fsync;
+    }
+
+    static CashCardLog inMemory() {
+        return new CashCardLog(null, Long.MAX_VALUE, false);
+    }
+
+    /** Loads the snapshot and the log into {@code columns} and opens the log for appending. */
+    void replay(CashCardColumns columns) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        Files.createDirectories(directory);
+
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (InputStream in = Files.newInputStream(snapshot)) {
+                long valid = read(in, columns);
+                if (valid != Files.size(snapshot)) {
+                    throw new IOException("Corrupt cash card snapshot " + snapshot);
+                }
+            }
+        }
+
+        records = 0;
+
+        Path log = directory.resolve(LOG_FILE);
+        long valid = 0;
+        if (Files.exists(log)) {
+            try (InputStream in = Files.newInputStream(log)) {
+                valid = read(in, columns);
+            }
+        }
+        channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (valid < channel.size()) {
+            logger.warn("Truncating {} torn bytes at the end of {}", channel.size() - valid, log);
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        channel.position(valid);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+    }
+
+    void appendPut(long id, long amountCents, String owner, long version) throws IOException {
+        if (out == null) {
+            return;
+        }
+        writePut(out, id, amountCents, owner, version);
+        records++;
+    }
+
+    void appendDelete(long id) throws IOException {
+        if (out == null) {
+            return;
+        }
+        writeIdRecord(out, DELETE, id);
+        records++;
+    }
+
+    /** Makes everything appended so far durable, to the OS or to disk depending on {@code fsync}. */
+    void commit() throws IOException {
+        if (out == null) {
+            return;
+        }
+        out.flush();
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * A snapshot pays off once the log holds more records than the store has
+     * cards, which keeps the cost of snapshots proportional to the writes.
+     */
+    boolean shouldSnapshot(int liveCards) {
+        return out != null && records >= snapshotThreshold && records >= liveCards;
+    }
+
+    void snapshot(CashCardColumns columns) throws IOException {
+        if (out == null) {
+            return;
+        }
+        commit();
+
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel snapshotChannel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream snapshotOut = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(snapshotChannel), BUFFER_SIZE));
+            writeIdRecord(snapshotOut, MAX_ID, columns.maxId());
+            for (int slot = 0; slot < columns.highWater(); slot++) {
+                if (columns.isLive(slot)) {
+                    writePut(snapshotOut, columns.id(slot), columns.cents(slot), columns.ownerName(slot),
+                            columns.version(slot));
+                }
+            }
+            snapshotOut.flush();
+            snapshotChannel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        records = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            commit();
+            out.close();
+            out = null;
+        }
+    }
+
+    private void writePut(DataOutputStream stream, long id, long amountCents, String owner, long version)
+            throws IOException {
+        byte[] ownerBytes = owner.getBytes(StandardCharsets.UTF_8);
+        crc.reset();
+        updateCrc(PUT);
+        updateCrc(id);
+        updateCrc(amountCents);
+        updateCrc(version);
+        crc.update(ownerBytes);
+        stream.writeByte(PUT);
+        stream.writeLong(id);
+        stream.writeLong(amountCents);
+        stream.writeLong(version);
+        stream.writeShort(ownerBytes.length);
+        stream.write(ownerBytes);
+        stream.writeInt((int) crc.getValue());
+    }
+
+    private void writeIdRecord(DataOutputStream stream, byte type, long id) throws IOException {
+        crc.reset();
+        updateCrc(type);
+        updateCrc(id);
+        stream.writeByte(type);
+        stream.writeLong(id);
+        stream.writeInt((int) crc.getValue());
+    }
+
+    /** Applies every intact record and returns the number of bytes they span. */
+    private long read(InputStream source, CashCardColumns columns) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source, BUFFER_SIZE));
+        long valid = 0;
+        while (true) {
+            try {
+                int type = in.read();
+                if (type < 0) {
+                    return valid;
+                }
+                crc.reset();
+                updateCrc((byte) type);
+                long id = in.readLong();
+                updateCrc(id);
+                long length = 1 + Long.BYTES + Integer.BYTES;
+                if (type == PUT) {
+                    long amountCents = in.readLong();
+                    long version = in.readLong();
+                    byte[] ownerBytes = new byte[in.readUnsignedShort()];
+                    in.readFully(ownerBytes);
+                    updateCrc(amountCents);
+                    updateCrc(version);
+                    crc.update(ownerBytes);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        return valid;
+                    }
+                    columns.put(id, amountCents, new String(ownerBytes, StandardCharsets.UTF_8), version);
+                    length += 2 * Long.BYTES + Short.BYTES + ownerBytes.length;
+                } else if (type == DELETE || type == MAX_ID) {
+                    if (in.readInt() != (int) crc.getValue()) {
+                        return valid;
+                    }
+                    if (type == DELETE) {
+                        int slot = columns.slotOf(id);
+                        if (slot >= 0) {
+                            columns.delete(slot);
+                        }
+                    }
+                    columns.advanceMaxId(id);
+                } else {
+                    return valid;
+                }
+                valid += length;
+                records++;
+            } catch (EOFException e) {
+                return valid;
+            }
+        }
+    }
+
+    private void updateCrc(byte value) {
+        crc.update(value);
+    }
+
+    private void updateCrc(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (value >>> shift));
+        }
+    }
+}
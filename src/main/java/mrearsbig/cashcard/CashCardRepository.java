@@ -1,14 +1,46 @@
 package mrearsbig.cashcard;
 
+import java.math.BigDecimal;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
-public interface CashCardRepository extends CrudRepository<CashCard, Long>, PagingAndSortingRepository<CashCard, Long> {
+public interface CashCardRepository extends CrudRepository<CashCard, Long>, PagingAndSortingRepository<CashCard, Long>,
+        CashCardJdbcOperations {
     // This interface extends CrudRepository and PagingAndSortingRepository
     // to provide basic CRUD operations and pagination/sorting capabilities.
     CashCard findByIdAndOwner(Long id, String owner);
     Page<CashCard> findByOwner(String owner, PageRequest pageRequest);
     boolean existsByIdAndOwner(Long id, String owner);
+
+    @Modifying
+    @Query("""
+            UPDATE cash_card SET amount = :amount, version = version + 1
+            WHERE id = :id AND owner = :owner""")
+    int updateAmountByIdAndOwner(Long id, String owner, BigDecimal amount);
+
+    @Modifying
+    @Query("""
+            UPDATE cash_card SET amount = :amount, version = version + 1
+            WHERE id = :id AND owner = :owner AND version = :version""")
+    int updateAmountByIdAndOwnerAndVersion(Long id, String owner, BigDecimal amount, Long version);
+
+    @Modifying
+    @Query("""
+            UPDATE cash_card SET amount = amount + :amount, version = version + 1
+            WHERE id = :id AND owner = :owner""")
+    int creditByIdAndOwner(Long id, String owner, BigDecimal amount);
+
+    @Modifying
+    @Query("""
+            UPDATE cash_card SET amount = amount - :amount, version = version + 1
+            WHERE id = :id AND owner = :owner AND amount >= :amount""")
+    int debitByIdAndOwner(Long id, String owner, BigDecimal amount);
+
+    @Modifying
+    @Query("DELETE FROM cash_card WHERE id = :id AND owner = :owner")
+    int deleteByIdAndOwner(Long id, String owner);
 }
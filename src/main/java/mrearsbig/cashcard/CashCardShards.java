@@ -0,0 +1,56 @@
+package mrearsbig.cashcard;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * The shard databases, named {@code shard0}, {@code shard1} and so on in the
+ * order their URLs are configured. Names are what the hash ring places, so new
+ * shards must be appended to the list, never inserted.
+ */
+class CashCardShards implements AutoCloseable {
+    private final Map<String, HikariDataSource> dataSources = new LinkedHashMap<>();
+
+    CashCardShards(List<String> urls, String username, String password) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("cashcard.sharding.urls must list at least one database");
+        }
+        for (String url : urls) {
+            String name = "shard" + dataSources.size();
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(url.strip())
+                    .username(username)
+                    .password(password)
+                    .build();
+            dataSource.setPoolName("cashcard-" + name);
+            dataSources.put(name, dataSource);
+        }
+    }
+
+    List<String> names() {
+        return new ArrayList<>(dataSources.keySet());
+    }
+
+    Map<String, ? extends DataSource> dataSources() {
+        return dataSources;
+    }
+
+    DataSource dataSource(String name) {
+        DataSource dataSource = dataSources.get(name);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Unknown shard " + name);
+        }
+        return dataSource;
+    }
+
+    @Override
+    public void close() {
+        dataSources.values().forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,15 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+
+public record CashCardSummary(String owner, long cardCount, BigDecimal totalAmount, BigDecimal minAmount,
+        BigDecimal maxAmount) {
+
+    // This record holds one owner's aggregates over all of their cards. It is
+    // maintained as cards change, so reading it never touches the cards
+    // themselves. An owner without cards has no minimum or maximum.
+
+    static CashCardSummary empty(String owner) {
+        return new CashCardSummary(owner, 0, BigDecimal.ZERO.setScale(CashCard.AMOUNT_SCALE), null, null);
+    }
+}
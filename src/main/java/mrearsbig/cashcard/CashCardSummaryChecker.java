@@ -0,0 +1,196 @@
+package mrearsbig.cashcard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Rebuilds every owner's summary from {@code cash_card} and compares it with
+ * {@code cash_card_summary}. The rebuild splits the table into id ranges of
+ * {@code chunk-size} rows and aggregates them in parallel; the next range
+ * boundary is found while earlier ranges are still being aggregated.
+ *
+ * <p>Cards written while the check runs can make an owner look drifted, so
+ * every candidate is checked again on its own, with the owner's summary row
+ * locked, before it is reported or repaired.
+ */
+@Component
+@Endpoint(id = "cashcardsummaries")
+@ConditionalOnProperty(name = "cashcard.storage", havingValue = "jdbc", matchIfMissing = true)
+public class CashCardSummaryChecker {
+    private static final Logger logger = LoggerFactory.getLogger(CashCardSummaryChecker.class);
+
+    private static final String SELECT_CHUNK_END = """
+            SELECT id FROM cash_card WHERE id > :after ORDER BY id OFFSET :offset ROWS FETCH NEXT 1 ROW ONLY""";
+    private static final String AGGREGATE_CHUNK = """
+            SELECT owner, COUNT(*) AS card_count, SUM(amount) AS total_amount, MIN(amount) AS min_amount,
+                MAX(amount) AS max_amount
+            FROM cash_card WHERE id > :after AND id <= :last GROUP BY owner""";
+    private static final String AGGREGATE_OWNER = """
+            SELECT owner, COUNT(*) AS card_count, SUM(amount) AS total_amount, MIN(amount) AS min_amount,
+                MAX(amount) AS max_amount
+            FROM cash_card WHERE owner = :owner GROUP BY owner""";
+    private static final String SELECT_SUMMARIES = """
+            SELECT owner, card_count, total_amount, min_amount, max_amount FROM cash_card_summary""";
+    private static final String LOCK_SUMMARY = """
+            SELECT owner, card_count, total_amount, min_amount, max_amount FROM cash_card_summary
+            WHERE owner = :owner FOR UPDATE""";
+    private static final String DELETE_SUMMARY = "DELETE FROM cash_card_summary WHERE owner = :owner";
+    private static final String INSERT_SUMMARY = """
+            INSERT INTO cash_card_summary (owner, card_count, total_amount, min_amount, max_amount)
+            VALUES (:owner, :cardCount, :totalAmount, :minAmount, :maxAmount)""";
+
+    private final NamedParameterJdbcOperations jdbcOperations;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int parallelism;
+
+    CashCardSummaryChecker(NamedParameterJdbcOperations jdbcOperations, TransactionTemplate transactionTemplate,
+            @Value("${cashcard.summary.check.chunk-size}") int chunkSize,
+            @Value("${cashcard.summary.check.parallelism}") int parallelism) {
+        this.jdbcOperations = jdbcOperations;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /** Owners whose stored summary does not match their cards. */
+    @ReadOperation
+    public List<CashCardSummaryDrift> check() {
+        return findDrift(false);
+    }
+
+    /** Rewrites every drifted summary from the cards and returns what was wrong. */
+    @WriteOperation
+    public List<CashCardSummaryDrift> repair() {
+        return findDrift(true);
+    }
+
+    private List<CashCardSummaryDrift> findDrift(boolean repair) {
+        Map<String, CashCardSummary> expected = rebuild();
+        Map<String, CashCardSummary> actual = new HashMap<>();
+        jdbcOperations.query(SELECT_SUMMARIES, resultSet -> {
+            CashCardSummary summary = CashCardJdbcOperationsImpl.mapSummary(resultSet);
+            actual.put(summary.owner(), summary);
+        });
+
+        Set<String> owners = new HashSet<>(expected.keySet());
+        owners.addAll(actual.keySet());
+        List<CashCardSummaryDrift> drift = new ArrayList<>();
+        for (String owner : owners) {
+            if (!matches(expected.get(owner), actual.get(owner))) {
+                CashCardSummaryDrift confirmed = transactionTemplate.execute(status -> recheck(owner, repair));
+                if (confirmed != null) {
+                    logger.warn("Summary for owner {} drifted: expected {}, found {}{}", owner,
+                            confirmed.expected(), confirmed.actual(), repair ? "; repaired" : "");
+                    drift.add(confirmed);
+                }
+            }
+        }
+        return drift;
+    }
+
+    private Map<String, CashCardSummary> rebuild() {
+        Map<String, CashCardSummary> summaries = new ConcurrentHashMap<>();
+        List<Future<?>> chunks = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism)) {
+            long after = Long.MIN_VALUE;
+            while (true) {
+                // Walking the primary key to the end of the next chunk is cheap
+                // next to aggregating it, and keeps chunks even however sparse
+                // the ids are.
+                List<Long> ends = jdbcOperations.queryForList(SELECT_CHUNK_END,
+                        new MapSqlParameterSource().addValue("after", after).addValue("offset", chunkSize - 1),
+                        Long.class);
+                long from = after;
+                long last = ends.isEmpty() ? Long.MAX_VALUE : ends.get(0);
+                chunks.add(executor.submit(() -> aggregate(from, last, summaries)));
+                if (ends.isEmpty()) {
+                    break;
+                }
+                after = last;
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rebuilding cash card summaries", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Rebuilding cash card summaries failed", e.getCause());
+        }
+        return summaries;
+    }
+
+    private void aggregate(long after, long last, Map<String, CashCardSummary> summaries) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("after", after).addValue("last", last);
+        jdbcOperations.query(AGGREGATE_CHUNK, parameters, resultSet -> {
+            CashCardSummary partial = CashCardJdbcOperationsImpl.mapSummary(resultSet);
+            summaries.merge(partial.owner(), partial, CashCardSummaryChecker::combine);
+        });
+    }
+
+    private CashCardSummaryDrift recheck(String owner, boolean repair) {
+        // Locking the summary row waits out writers of this owner that are
+        // mid-transaction, so both sides below see the same cards.
+        MapSqlParameterSource parameters = new MapSqlParameterSource("owner", owner);
+        CashCardSummary actual = jdbcOperations.query(LOCK_SUMMARY, parameters,
+                (resultSet, rowNum) -> CashCardJdbcOperationsImpl.mapSummary(resultSet)).stream().findFirst()
+                .orElse(null);
+        CashCardSummary expected = jdbcOperations.query(AGGREGATE_OWNER, parameters,
+                (resultSet, rowNum) -> CashCardJdbcOperationsImpl.mapSummary(resultSet)).stream().findFirst()
+                .orElse(null);
+        if (matches(expected, actual)) {
+            return null;
+        }
+
+        if (repair) {
+            jdbcOperations.update(DELETE_SUMMARY, parameters);
+            if (expected != null) {
+                jdbcOperations.update(INSERT_SUMMARY, new MapSqlParameterSource()
+                        .addValue("owner", owner)
+                        .addValue("cardCount", expected.cardCount())
+                        .addValue("totalAmount", expected.totalAmount())
+                        .addValue("minAmount", expected.minAmount())
+                        .addValue("maxAmount", expected.maxAmount()));
+            }
+        }
+        return new CashCardSummaryDrift(owner, expected != null ? expected : CashCardSummary.empty(owner),
+                actual != null ? actual : CashCardSummary.empty(owner));
+    }
+
+    private static CashCardSummary combine(CashCardSummary left, CashCardSummary right) {
+        return new CashCardSummary(left.owner(), left.cardCount() + right.cardCount(),
+                left.totalAmount().add(right.totalAmount()),
+                left.minAmount().min(right.minAmount()), left.maxAmount().max(right.maxAmount()));
+    }
+
+    private static boolean matches(CashCardSummary expected, CashCardSummary actual) {
+        if (expected == null || actual == null) {
+            return expected == actual;
+        }
+        return expected.cardCount() == actual.cardCount()
+                && expected.totalAmount().compareTo(actual.totalAmount()) == 0
+                && expected.minAmount().compareTo(actual.minAmount()) == 0
+                && expected.maxAmount().compareTo(actual.maxAmount()) == 0;
+    }
+}
@@ -0,0 +1,8 @@
+package mrearsbig.cashcard;
+
+public record CashCardSummaryDrift(String owner, CashCardSummary expected, CashCardSummary actual) {
+
+    // This record reports an owner whose stored summary does not match their
+    // cards: expected is rebuilt from cash_card, actual is cash_card_summary.
+
+}
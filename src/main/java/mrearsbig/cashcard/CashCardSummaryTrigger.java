@@ -0,0 +1,107 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Objects;
+import org.h2.api.Trigger;
+
+/**
+ * Keeps {@code cash_card_summary} in step with {@code cash_card}. H2 calls it
+ * for every inserted, updated and deleted row, on the writer's connection and
+ * inside its transaction, so every write path (repository methods, batches,
+ * write-behind, migrations) updates the summary atomically with the card.
+ *
+ * <p>Counts and totals change by a delta. The minimum and maximum only need the
+ * owner's cards when the card holding one of them moves inwards or goes away,
+ * and then a single probe at either end of the (owner, amount, id) index finds
+ * the new value.
+ */
+public class CashCardSummaryTrigger implements Trigger {
+    private static final int AMOUNT = 1;
+    private static final int OWNER = 2;
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private static final String ADD = """
+            UPDATE cash_card_summary SET card_count = card_count + 1, total_amount = total_amount + ?,
+                min_amount = LEAST(min_amount, ?), max_amount = GREATEST(max_amount, ?)
+            WHERE owner = ?""";
+    private static final String INSERT = """
+            INSERT INTO cash_card_summary (owner, card_count, total_amount, min_amount, max_amount)
+            VALUES (?, 1, ?, ?, ?)""";
+    private static final String REMOVE = """
+            UPDATE cash_card_summary SET card_count = card_count - 1, total_amount = total_amount - ?
+            WHERE owner = ?""";
+    private static final String DELETE_EMPTY = """
+            DELETE FROM cash_card_summary WHERE owner = ? AND card_count = 0""";
+    private static final String CHANGE = """
+            UPDATE cash_card_summary SET total_amount = total_amount + ?,
+                min_amount = LEAST(min_amount, ?), max_amount = GREATEST(max_amount, ?)
+            WHERE owner = ?""";
+    private static final String RESET_EXTREMES = """
+            UPDATE cash_card_summary SET
+                min_amount = (SELECT amount FROM cash_card WHERE owner = ? ORDER BY amount FETCH FIRST ROW ONLY),
+                max_amount = (SELECT amount FROM cash_card WHERE owner = ? ORDER BY amount DESC FETCH FIRST ROW ONLY)
+            WHERE owner = ? AND (min_amount = ? OR max_amount = ?)""";
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (oldRow != null && newRow != null && Objects.equals(oldRow[OWNER], newRow[OWNER])) {
+            change(connection, (String) newRow[OWNER], (BigDecimal) oldRow[AMOUNT], (BigDecimal) newRow[AMOUNT]);
+            return;
+        }
+        if (oldRow != null) {
+            remove(connection, (String) oldRow[OWNER], (BigDecimal) oldRow[AMOUNT]);
+        }
+        if (newRow != null) {
+            add(connection, (String) newRow[OWNER], (BigDecimal) newRow[AMOUNT]);
+        }
+    }
+
+    private static void add(Connection connection, String owner, BigDecimal amount) throws SQLException {
+        while (true) {
+            if (execute(connection, ADD, amount, amount, amount, owner) > 0) {
+                return;
+            }
+            try {
+                execute(connection, INSERT, owner, amount, amount, amount);
+                return;
+            } catch (SQLException e) {
+                // Another transaction created the owner's row first; add to it instead.
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static void remove(Connection connection, String owner, BigDecimal amount) throws SQLException {
+        // The first statement locks the owner's row, so the extremes below are
+        // read only after every concurrent writer for this owner has committed.
+        execute(connection, REMOVE, amount, owner);
+        if (execute(connection, DELETE_EMPTY, owner) > 0) {
+            return;
+        }
+        execute(connection, RESET_EXTREMES, owner, owner, owner, amount, amount);
+    }
+
+    private static void change(Connection connection, String owner, BigDecimal oldAmount, BigDecimal newAmount)
+            throws SQLException {
+        if (oldAmount.compareTo(newAmount) == 0) {
+            return;
+        }
+        execute(connection, CHANGE, newAmount.subtract(oldAmount), newAmount, newAmount, owner);
+        // Still equal to the old amount means the extreme moved inwards.
+        execute(connection, RESET_EXTREMES, owner, owner, owner, oldAmount, oldAmount);
+    }
+
+    private static int execute(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            return statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package mrearsbig.cashcard;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+/**
+ * Users and roles from the {@code cash_card_user} table, which holds BCrypt
+ * hashes, so startup encodes nothing.
+ *
+ * <p>Lookups are answered from an in-memory index. The first lookup starts a
+ * background load of the whole table in keyset batches of {@code batchSize}
+ * users; until it reaches a user, that user is read on its own. Entries older
+ * than {@code refreshInterval} are read again, so a password changed or a user
+ * disabled in the table takes effect within that interval.
+ *
+ * <p>As a {@link UserDetailsPasswordService}, the store takes the new hash
+ * when a login upgrades a password to the configured BCrypt strength.
+ */
+class CashCardUserStore implements UserDetailsService, UserDetailsPasswordService, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CashCardUserStore.class);
+
+    private static final String SELECT_USER = """
+            SELECT username, password, roles, enabled FROM cash_card_user WHERE username = ?""";
+    private static final String SELECT_BATCH = """
+            SELECT username, password, roles, enabled FROM cash_card_user
+            WHERE username > ? ORDER BY username FETCH FIRST ? ROWS ONLY""";
+    private static final String UPDATE_PASSWORD = """
+            UPDATE cash_card_user SET password = ? WHERE username = ? AND password = ?""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final long refreshNanos;
+    private final ConcurrentHashMap<String, Entry> index = new ConcurrentHashMap<>();
+    private Thread loader;
+    private volatile boolean loaded;
+    private volatile boolean closed;
+
+    /** An indexed user; {@link #user()} hands out a copy, as callers erase credentials. */
+    private record Entry(String username, String password, List<GrantedAuthority> authorities, boolean enabled,
+            long loadedAt) {
+
+        UserDetails user() {
+            return new User(username, password, enabled, true, true, true, authorities);
+        }
+    }
+
+    CashCardUserStore(DataSource dataSource, int batchSize, Duration refreshInterval) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("cashcard.users.batch-size must be positive");
+        }
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.batchSize = batchSize;
+        this.refreshNanos = refreshInterval.toNanos();
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        startLoading();
+        Entry entry = index.get(username);
+        if (entry == null || System.nanoTime() - entry.loadedAt() > refreshNanos) {
+            List<Entry> entries = jdbcTemplate.query(SELECT_USER, this::mapEntry, username);
+            if (entries.isEmpty()) {
+                index.remove(username);
+                throw new UsernameNotFoundException(username);
+            }
+            entry = entries.get(0);
+            index.put(username, entry);
+        }
+        return entry.user();
+    }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        // Only replaces the hash the login was checked against, so a password
+        // changed in the meantime is not overwritten with the old one.
+        int updated = jdbcTemplate.update(UPDATE_PASSWORD, newPassword, user.getUsername(), user.getPassword());
+        if (updated == 0) {
+            index.remove(user.getUsername());
+            return user;
+        }
+        Entry entry = new Entry(user.getUsername(), newPassword, List.copyOf(user.getAuthorities()),
+                user.isEnabled(), System.nanoTime());
+        index.put(user.getUsername(), entry);
+        return entry.user();
+    }
+
+    /** Waits until the background load has indexed every user. */
+    void awaitLoaded() throws InterruptedException {
+        startLoading();
+        Thread thread;
+        synchronized (this) {
+            thread = loader;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+        if (!loaded) {
+            throw new IllegalStateException("Loading the cash card user index failed");
+        }
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private void startLoading() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            // A failed load leaves a finished thread behind and is retried.
+            if (loaded || closed || (loader != null && loader.isAlive())) {
+                return;
+            }
+            loader = Thread.ofVirtual().name("cashcard-user-index").start(this::load);
+        }
+    }
+
+    private void load() {
+        try {
+            String after = "";
+            List<Entry> batch;
+            do {
+                batch = jdbcTemplate.query(SELECT_BATCH, this::mapEntry, after, batchSize);
+                for (Entry entry : batch) {
+                    // A user read on its own or given a new hash meanwhile is at
+                    // least as current as this batch.
+                    index.putIfAbsent(entry.username(), entry);
+                }
+                if (!batch.isEmpty()) {
+                    after = batch.get(batch.size() - 1).username();
+                }
+            } while (batch.size() == batchSize && !closed);
+            loaded = !closed;
+        } catch (RuntimeException e) {
+            logger.warn("Loading the cash card user index failed; users are read one by one until it is retried", e);
+        }
+    }
+
+    private Entry mapEntry(ResultSet resultSet, int rowNumber) throws SQLException {
+        String[] roles = resultSet.getString("roles").split(",");
+        List<GrantedAuthority> authorities = new ArrayList<>(roles.length);
+        for (String role : roles) {
+            if (!role.isBlank()) {
+                authorities.add(new SimpleGrantedAuthority("ROLE_" + role.strip()));
+            }
+        }
+        return new Entry(resultSet.getString("username"), resultSet.getString("password"),
+                List.copyOf(authorities), resultSet.getBoolean("enabled"), System.nanoTime());
+    }
+}
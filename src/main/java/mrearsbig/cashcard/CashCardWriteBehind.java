@@ -0,0 +1,316 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Optional write path for creating, updating and deleting single cash cards.
+ * A mutation is acknowledged as soon as its {@link CashCardJournal} entry is
+ * durable, and the {@code cash_card} table catches up in the background, one
+ * transaction per batch.
+ *
+ * <p>Until a mutation is applied, it sits in an overlay keyed by card id, and
+ * {@link #findByIdAndOwner} answers from there, so a client always reads its own
+ * writes. Lists and exports read the table and may lag by one apply interval.
+ * Every other write calls {@link #awaitApplied()} first, so it never races a
+ * pending mutation to the same row; if the table does not catch up within
+ * {@code applyTimeout}, that write fails with 503 instead of waiting.
+ *
+ * <p>After a failed batch, entries are applied one at a time. An entry that
+ * fails on its own {@code maxAttempts} times in a row for a reason other than
+ * the database being unavailable is skipped, logged and counted in
+ * {@code cashcard.write-behind.skipped}, so one bad entry cannot stall the
+ * journal. {@code cashcard.write-behind.failures} reports the failed attempts
+ * since the last one that succeeded.
+ */
+class CashCardWriteBehind implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CashCardWriteBehind.class);
+    private static final int LOCK_STRIPES = 64;
+    private static final int MAX_OWNER_LENGTH = 256;
+
+    private final CashCardRepository cashCardRepository;
+    private final CashCardCache cashCardCache;
+    private final TransactionTemplate transactionTemplate;
+    private final CashCardJournal journal;
+    private final CashCardChangeFeed changeFeed;
+    private final CashCardIdGenerator idGenerator;
+    private final int batchSize;
+    private final Duration applyInterval;
+    private final Duration applyTimeout;
+    private final int maxAttempts;
+    private final Counter skipped;
+    private final ConcurrentHashMap<Long, Pending> overlay = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final Thread applier;
+    private volatile boolean running = true;
+    private volatile int failures;
+    private int headFailures;
+
+    /** The latest unapplied state of a card; a null card means it was deleted. */
+    private record Pending(long sequence, String owner, CashCard cashCard) {
+    }
+
+    CashCardWriteBehind(CashCardRepository cashCardRepository, CashCardCache cashCardCache,
+            TransactionTemplate transactionTemplate, CashCardJournal journal, CashCardChangeFeed changeFeed,
+            CashCardIdGenerator idGenerator, int batchSize, Duration applyInterval, Duration applyTimeout,
+            int maxAttempts, MeterRegistry meterRegistry) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("cashcard.write-behind.max-attempts must be positive");
+        }
+        this.cashCardRepository = cashCardRepository;
+        this.cashCardCache = cashCardCache;
+        this.transactionTemplate = transactionTemplate;
+        this.journal = journal;
+        this.changeFeed = changeFeed;
+        this.idGenerator = idGenerator;
+        this.batchSize = batchSize;
+        this.applyInterval = applyInterval;
+        this.applyTimeout = applyTimeout;
+        this.maxAttempts = maxAttempts;
+        this.skipped = Counter.builder("cashcard.write-behind.skipped")
+                .description("Journal entries given up on after failing maxAttempts times")
+                .register(meterRegistry);
+        Gauge.builder("cashcard.write-behind.failures", this, writeBehind -> writeBehind.failures)
+                .description("Failed attempts to apply the journal since the last successful one")
+                .register(meterRegistry);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+
+        // Entries that were acknowledged before a restart but never applied go
+        // back into the overlay; the applier then writes them to the table.
+        for (CashCardJournal.Entry entry : journal.unapplied()) {
+            overlay.put(entry.id(), pending(entry));
+        }
+        this.applier = Thread.ofPlatform().name("cashcard-write-behind").daemon().start(this::applyLoop);
+    }
+
+    CashCard findByIdAndOwner(Long id, String owner, Supplier<CashCard> committed) {
+        Pending pending = overlay.get(id);
+        if (pending == null) {
+            return committed.get();
+        }
+        return pending.cashCard() != null && pending.owner().equals(owner) ? pending.cashCard() : null;
+    }
+
+    CashCard create(BigDecimal amount, String owner) {
+        long id = idGenerator.nextId();
+        CashCard cashCard = new CashCard(id, amount, owner);
+        long sequence = append(CashCardJournal.CREATE, cashCard, () -> true);
+        awaitDurable(sequence);
+        return cashCard;
+    }
+
+    int updateAmountByIdAndOwner(Long id, String owner, BigDecimal amount) {
+        CashCard cashCard = new CashCard(id, amount, owner);
+        long sequence = append(CashCardJournal.UPDATE, cashCard, () -> exists(id, owner));
+        if (sequence < 0) {
+            return 0;
+        }
+        awaitDurable(sequence);
+        return 1;
+    }
+
+    int deleteByIdAndOwner(Long id, String owner) {
+        long sequence = append(CashCardJournal.DELETE, new CashCard(id, null, owner), () -> exists(id, owner));
+        if (sequence < 0) {
+            return 0;
+        }
+        awaitDurable(sequence);
+        return 1;
+    }
+
+    /**
+     * Waits until every mutation acknowledged so far is in the table, or fails
+     * with 503 once {@code applyTimeout} has passed.
+     */
+    void awaitApplied() {
+        long sequence = journal.lastSequence();
+        LockSupport.unpark(applier);
+        try {
+            if (!journal.awaitCheckpoint(sequence, applyTimeout)) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Pending cash card writes were not applied within " + applyTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for pending cash card writes", e);
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(applier);
+        applier.join();
+        // Apply what is left so a clean shutdown leaves nothing to replay.
+        while (applyBatch(batchSize)) {
+        }
+    }
+
+    private long append(byte type, CashCard cashCard, BooleanSupplier precondition) {
+        if (type != CashCardJournal.DELETE) {
+            checkAmount(cashCard.amount());
+        }
+        if (cashCard.owner() == null || cashCard.owner().length() > MAX_OWNER_LENGTH) {
+            throw new DataIntegrityViolationException("OWNER must be at most " + MAX_OWNER_LENGTH + " characters");
+        }
+        // Deciding whether the card exists and appending the entry happen under
+        // the same per-id lock, so two writers to one card cannot both pass.
+        ReentrantLock lock = locks[Math.floorMod(Long.hashCode(cashCard.id()), LOCK_STRIPES)];
+        lock.lock();
+        try {
+            if (!precondition.getAsBoolean()) {
+                return -1;
+            }
+            long amountCents = type == CashCardJournal.DELETE ? 0 : cashCard.amount().unscaledValue().longValueExact();
+            long sequence = journal.append(type, cashCard.id(), amountCents, cashCard.owner());
+            overlay.put(cashCard.id(),
+                    new Pending(sequence, cashCard.owner(), type == CashCardJournal.DELETE ? null : cashCard));
+            return sequence;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while appending to the cash card journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        try {
+            journal.awaitDurable(sequence);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the cash card journal", e);
+        }
+    }
+
+    private boolean exists(Long id, String owner) {
+        Pending pending = overlay.get(id);
+        if (pending != null) {
+            return pending.cashCard() != null && pending.owner().equals(owner);
+        }
+        return cashCardRepository.existsByIdAndOwner(id, owner);
+    }
+
+    private void applyLoop() {
+        while (running) {
+            // After a failure, the oldest entry is retried on its own, so the
+            // attempts below count against the entry that actually fails.
+            boolean alone = failures > 0;
+            try {
+                boolean applied = applyBatch(alone ? 1 : batchSize);
+                failures = 0;
+                headFailures = 0;
+                if (!applied) {
+                    LockSupport.parkNanos(applyInterval.toNanos());
+                }
+            } catch (RuntimeException e) {
+                // The entries stay in the journal and the overlay, so nothing is
+                // lost; the next attempt retries. An unavailable database is
+                // waited out however long it takes.
+                failures++;
+                if (alone && !isUnavailable(e) && ++headFailures >= maxAttempts) {
+                    skipOldest(e);
+                } else {
+                    logger.warn("Applying pending cash card writes failed; retrying", e);
+                }
+                LockSupport.parkNanos(applyInterval.toNanos());
+            }
+        }
+    }
+
+    private boolean applyBatch(int maximum) {
+        List<CashCardJournal.Entry> batch = journal.durableUnapplied(maximum);
+        if (batch.isEmpty()) {
+            return false;
+        }
+        transactionTemplate.executeWithoutResult(status -> batch.forEach(this::apply));
+        settle(batch);
+        // The change feed only sees a mutation once it is in the table.
+        if (changeFeed != null) {
+            batch.stream().map(CashCardJournal.Entry::owner).distinct().forEach(changeFeed::changed);
+        }
+        return true;
+    }
+
+    private void skipOldest(RuntimeException cause) {
+        CashCardJournal.Entry oldest = journal.durableUnapplied(1).get(0);
+        logger.error("Skipping cash card journal entry {} after {} failed attempts; its mutation is lost",
+                oldest, maxAttempts, cause);
+        // Readers fall back to the table, which never saw the mutation.
+        settle(List.of(oldest));
+        skipped.increment();
+        failures = 0;
+        headFailures = 0;
+    }
+
+    private void settle(List<CashCardJournal.Entry> batch) {
+        // The table now holds the batch, or the batch was skipped, so its overlay
+        // entries can go; an entry overwritten by a newer mutation stays. Only
+        // then does the checkpoint release writers blocked in awaitApplied.
+        for (CashCardJournal.Entry entry : batch) {
+            cashCardCache.invalidate(entry.id(), entry.owner());
+            overlay.computeIfPresent(entry.id(),
+                    (id, pending) -> pending.sequence() == entry.sequence() ? null : pending);
+        }
+        journal.checkpoint(batch.get(batch.size() - 1).sequence());
+    }
+
+    private static boolean isUnavailable(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException || e instanceof TransactionException;
+    }
+
+    private void apply(CashCardJournal.Entry entry) {
+        // Every entry can be applied twice: a crash between the commit and the
+        // checkpoint replays it. Updates and deletes are idempotent, and a create
+        // whose row is already there is skipped; later entries carry the rest.
+        BigDecimal amount = BigDecimal.valueOf(entry.amountCents(), CashCard.AMOUNT_SCALE);
+        switch (entry.type()) {
+            case CashCardJournal.CREATE -> {
+                if (!cashCardRepository.existsById(entry.id())) {
+                    cashCardRepository.save(new CashCard(entry.id(), amount, entry.owner()));
+                }
+            }
+            case CashCardJournal.UPDATE -> cashCardRepository.updateAmountByIdAndOwner(entry.id(), entry.owner(), amount);
+            case CashCardJournal.DELETE -> cashCardRepository.deleteByIdAndOwner(entry.id(), entry.owner());
+            default -> throw new IllegalStateException("Unknown journal entry type " + entry.type());
+        }
+    }
+
+    private static Pending pending(CashCardJournal.Entry entry) {
+        CashCard cashCard = entry.type() == CashCardJournal.DELETE ? null
+                : new CashCard(entry.id(), BigDecimal.valueOf(entry.amountCents(), CashCard.AMOUNT_SCALE),
+                        entry.owner());
+        return new Pending(entry.sequence(), entry.owner(), cashCard);
+    }
+
+    private static void checkAmount(BigDecimal amount) {
+        if (amount == null) {
+            throw new DataIntegrityViolationException("AMOUNT must not be null");
+        }
+        if (amount.precision() - amount.scale() > 16) {
+            throw new DataIntegrityViolationException("AMOUNT out of range: " + amount);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package mrearsbig.cashcard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring that maps owners to shard names. Each shard sits on the
+ * ring at {@code virtualNodes} points, so owners spread evenly, and adding a
+ * shard only moves about 1/N of them, all onto the new shard.
+ */
+final class ConsistentHashRing {
+    private final long[] points;
+    private final String[] shards;
+
+    ConsistentHashRing(Collection<String> shardNames, int virtualNodes) {
+        if (shardNames.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Virtual nodes must be at least 1");
+        }
+        // Two points that hash alike go to the smaller name, so the ring does not
+        // depend on the order the shards are listed in.
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String shard : shardNames) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.merge(hash(shard + "#" + i), shard, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+        this.points = new long[ring.size()];
+        this.shards = new String[ring.size()];
+        int index = 0;
+        for (Map.Entry<Long, String> point : ring.entrySet()) {
+            points[index] = point.getKey();
+            shards[index++] = point.getValue();
+        }
+    }
+
+    /** The shard of the first point at or after the owner's hash, wrapping around. */
+    String shardFor(String owner) {
+        long hash = hash(owner);
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (points[middle] < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return shards[low == points.length ? 0 : low];
+    }
+
+    static long hash(String key) {
+        // FNV-1a over the UTF-8 bytes, then the SplitMix64 finalizer: FNV alone
+        // clusters keys that differ only in their last characters, such as
+        // "shard0#1" and "shard0#2".
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
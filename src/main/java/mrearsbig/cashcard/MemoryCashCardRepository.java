@@ -0,0 +1,586 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.Assert;
+
+/**
+ * {@link CashCardRepository} kept entirely in memory in {@link CashCardColumns},
+ * made durable by a {@link CashCardLog}. It is selected with
+ * {@code cashcard.storage=memory} and behaves like the JDBC repository: the
+ * same owner scoping, affected-row counts, versioning and exceptions.
+ *
+ * <p>A read-write lock guards the columns. Every write is applied, appended to
+ * the log and committed before the lock is released. If the log cannot be
+ * written, the repository refuses further writes, because memory would no
+ * longer match disk; a restart replays the log and recovers the last
+ * committed state.
+ */
+class MemoryCashCardRepository implements CashCardRepository {
+    private static final int MAX_OWNER_LENGTH = 256;
+
+    private final CashCardColumns columns = new CashCardColumns();
+    private final CashCardLog log;
+    private final int exportChunkSize;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean failed;
+
+    MemoryCashCardRepository(CashCardLog log, int exportChunkSize) {
+        this.log = log;
+        this.exportChunkSize = exportChunkSize;
+        try {
+            log.replay(columns);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to load the cash card log", e);
+        }
+    }
+
+    @Override
+    public CashCard findByIdAndOwner(Long id, String owner) {
+        return read(() -> {
+            int slot = ownedSlot(id, owner);
+            return slot < 0 ? null : columns.toCashCard(slot);
+        });
+    }
+
+    @Override
+    public Page<CashCard> findByOwner(String owner, PageRequest pageRequest) {
+        return read(() -> {
+            int ownerId = columns.ownerId(owner);
+            if (ownerId < 0) {
+                return new PageImpl<>(List.of(), pageRequest, 0);
+            }
+            CashCardColumns.OwnerIndex index = columns.index(ownerId);
+            Sort sort = pageRequest.getSort();
+            Sort.Order order = indexedOrder(sort);
+            List<CashCard> content;
+            if (sort.isUnsorted() || order != null) {
+                // Walk the owner's sorted index from the requested offset, in
+                // either direction, without looking at any other card.
+                boolean byAmount = order != null && order.getProperty().equals("amount");
+                boolean ascending = order == null || order.isAscending();
+                long end = Math.min(pageRequest.getOffset() + pageRequest.getPageSize(), index.size());
+                content = new ArrayList<>();
+                for (long i = pageRequest.getOffset(); i < end; i++) {
+                    int position = ascending ? (int) i : index.size() - 1 - (int) i;
+                    content.add(columns.toCashCard(byAmount ? index.byAmount(position) : index.byId(position)));
+                }
+            } else {
+                List<CashCard> all = new ArrayList<>(index.size());
+                for (int position = 0; position < index.size(); position++) {
+                    all.add(columns.toCashCard(index.byId(position)));
+                }
+                content = page(all, sort, pageRequest);
+            }
+            return new PageImpl<>(content, pageRequest, index.size());
+        });
+    }
+
+    @Override
+    public boolean existsByIdAndOwner(Long id, String owner) {
+        return read(() -> ownedSlot(id, owner) >= 0);
+    }
+
+    @Override
+    public int updateAmountByIdAndOwner(Long id, String owner, BigDecimal amount) {
+        long amountCents = toCents(amount);
+        return write(() -> {
+            int slot = ownedSlot(id, owner);
+            return slot < 0 ? 0 : setAmount(slot, amountCents);
+        });
+    }
+
+    @Override
+    public int updateAmountByIdAndOwnerAndVersion(Long id, String owner, BigDecimal amount, Long version) {
+        long amountCents = toCents(amount);
+        return write(() -> {
+            int slot = ownedSlot(id, owner);
+            return slot < 0 || version == null || columns.version(slot) != version ? 0 : setAmount(slot, amountCents);
+        });
+    }
+
+    @Override
+    public int creditByIdAndOwner(Long id, String owner, BigDecimal amount) {
+        long amountCents = toCents(amount);
+        return write(() -> {
+            int slot = ownedSlot(id, owner);
+            return slot < 0 ? 0 : setAmount(slot, checkedAdd(columns.cents(slot), amountCents));
+        });
+    }
+
+    @Override
+    public int debitByIdAndOwner(Long id, String owner, BigDecimal amount) {
+        long amountCents = toCents(amount);
+        return write(() -> {
+            int slot = ownedSlot(id, owner);
+            if (slot < 0 || columns.cents(slot) < amountCents) {
+                return 0;
+            }
+            return setAmount(slot, checkedAdd(columns.cents(slot), -amountCents));
+        });
+    }
+
+    @Override
+    public int deleteByIdAndOwner(Long id, String owner) {
+        return write(() -> {
+            int slot = ownedSlot(id, owner);
+            return slot < 0 ? 0 : delete(slot);
+        });
+    }
+
+    @Override
+    public int[] updateAmountsByOwner(List<CashCard> cashCards, String owner) {
+        // Amounts are validated up front so a bad one rejects the whole batch,
+        // as the JDBC batch does inside its transaction.
+        long[] amounts = new long[cashCards.size()];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = toCents(cashCards.get(i).amount());
+        }
+        return write(() -> {
+            int[] counts = new int[amounts.length];
+            for (int i = 0; i < counts.length; i++) {
+                int slot = ownedSlot(cashCards.get(i).id(), owner);
+                counts[i] = slot < 0 ? 0 : setAmount(slot, amounts[i]);
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public int[] deleteAllByIdsAndOwner(List<Long> ids, String owner) {
+        return write(() -> {
+            int[] counts = new int[ids.size()];
+            for (int i = 0; i < counts.length; i++) {
+                int slot = ownedSlot(ids.get(i), owner);
+                counts[i] = slot < 0 ? 0 : delete(slot);
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public void streamByOwner(String owner, Consumer<CashCard> consumer) {
+        // Cards are copied out in chunks under the read lock and handed to the
+        // consumer outside it, so a slow client never holds up writers.
+        Long lastId = null;
+        while (true) {
+            Long after = lastId;
+            List<CashCard> chunk = read(() -> {
+                int ownerId = columns.ownerId(owner);
+                if (ownerId < 0) {
+                    return List.<CashCard>of();
+                }
+                CashCardColumns.OwnerIndex index = columns.index(ownerId);
+                int start = after == null ? 0 : index.searchId(after, false);
+                int end = Math.min(start + exportChunkSize, index.size());
+                List<CashCard> cashCards = new ArrayList<>(end - start);
+                for (int position = start; position < end; position++) {
+                    cashCards.add(columns.toCashCard(index.byId(position)));
+                }
+                return cashCards;
+            });
+            chunk.forEach(consumer);
+            if (chunk.size() < exportChunkSize) {
+                return;
+            }
+            lastId = chunk.get(chunk.size() - 1).id();
+        }
+    }
+
+    @Override
+    public CashCardSummary findSummaryByOwner(String owner) {
+        // The owner index keeps its total up to date and its amounts sorted, so
+        // the summary is constant time.
+        return read(() -> {
+            int ownerId = columns.ownerId(owner);
+            if (ownerId < 0 || columns.index(ownerId).size() == 0) {
+                return CashCardSummary.empty(owner);
+            }
+            CashCardColumns.OwnerIndex index = columns.index(ownerId);
+            return new CashCardSummary(owner, index.size(), index.total(),
+                    BigDecimal.valueOf(index.minCents(), CashCard.AMOUNT_SCALE),
+                    BigDecimal.valueOf(index.maxCents(), CashCard.AMOUNT_SCALE));
+        });
+    }
+
+    @Override
+    public Slice<CashCard> findByOwnerAfter(String owner, Sort.Order order, CashCardCursor cursor, int size) {
+        if (!CashCardCursor.SORTABLE_PROPERTIES.contains(order.getProperty())) {
+            throw new IllegalArgumentException("Unsupported cursor sort: " + order.getProperty());
+        }
+        boolean byAmount = order.getProperty().equals("amount");
+        long cursorCents = cursor != null && byAmount ? toCents(cursor.amount()) : 0;
+
+        List<CashCard> cashCards = read(() -> {
+            int ownerId = columns.ownerId(owner);
+            if (ownerId < 0) {
+                return List.<CashCard>of();
+            }
+            CashCardColumns.OwnerIndex index = columns.index(ownerId);
+            // Descending pages walk the ascending (amount, id) index backwards,
+            // which matches ORDER BY amount DESC, id DESC.
+            int position;
+            if (order.isAscending()) {
+                position = cursor == null ? 0
+                        : byAmount ? index.searchAmount(cursorCents, cursor.id(), false)
+                                : index.searchId(cursor.id(), false);
+            } else {
+                position = cursor == null ? index.size() - 1
+                        : (byAmount ? index.searchAmount(cursorCents, cursor.id(), true)
+                                : index.searchId(cursor.id(), true)) - 1;
+            }
+            int step = order.isAscending() ? 1 : -1;
+            List<CashCard> page = new ArrayList<>(size + 1);
+            for (; position >= 0 && position < index.size() && page.size() <= size; position += step) {
+                page.add(columns.toCashCard(byAmount ? index.byAmount(position) : index.byId(position)));
+            }
+            return page;
+        });
+
+        boolean hasNext = cashCards.size() > size;
+        return new SliceImpl<>(hasNext ? cashCards.subList(0, size) : cashCards,
+                PageRequest.of(0, size, Sort.by(order)), hasNext);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends CashCard> S save(S cashCard) {
+        Assert.notNull(cashCard, "Entity must not be null");
+        return (S) write(() -> {
+            checkSavable(cashCard, new HashSet<>());
+            return store(cashCard);
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends CashCard> Iterable<S> saveAll(Iterable<S> cashCards) {
+        Assert.notNull(cashCards, "Entities must not be null");
+        return write(() -> {
+            // Everything is checked before anything is stored, so a duplicate
+            // or stale card rejects the whole batch.
+            Set<Long> ids = new HashSet<>();
+            for (S cashCard : cashCards) {
+                checkSavable(cashCard, ids);
+            }
+            List<S> saved = new ArrayList<>();
+            for (S cashCard : cashCards) {
+                saved.add((S) store(cashCard));
+            }
+            return saved;
+        });
+    }
+
+    @Override
+    public Optional<CashCard> findById(Long id) {
+        Assert.notNull(id, "The given id must not be null");
+        return read(() -> {
+            int slot = columns.slotOf(id);
+            return slot < 0 ? Optional.empty() : Optional.of(columns.toCashCard(slot));
+        });
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        Assert.notNull(id, "The given id must not be null");
+        return read(() -> columns.slotOf(id) >= 0);
+    }
+
+    @Override
+    public Iterable<CashCard> findAll() {
+        return read(this::all);
+    }
+
+    @Override
+    public Iterable<CashCard> findAllById(Iterable<Long> ids) {
+        Assert.notNull(ids, "Ids must not be null");
+        return read(() -> {
+            List<CashCard> cashCards = new ArrayList<>();
+            for (Long id : ids) {
+                int slot = id == null ? -1 : columns.slotOf(id);
+                if (slot >= 0) {
+                    cashCards.add(columns.toCashCard(slot));
+                }
+            }
+            return cashCards;
+        });
+    }
+
+    @Override
+    public Iterable<CashCard> findAll(Sort sort) {
+        return read(() -> {
+            List<CashCard> cashCards = all();
+            cashCards.sort(comparator(sort));
+            return cashCards;
+        });
+    }
+
+    @Override
+    public Page<CashCard> findAll(Pageable pageable) {
+        return read(() -> {
+            List<CashCard> cashCards = all();
+            if (pageable.isUnpaged()) {
+                cashCards.sort(comparator(pageable.getSort()));
+                return new PageImpl<>(cashCards);
+            }
+            return new PageImpl<>(page(cashCards, pageable.getSort(), pageable), pageable, cashCards.size());
+        });
+    }
+
+    @Override
+    public long count() {
+        return read(() -> (long) columns.size());
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        Assert.notNull(id, "The given id must not be null");
+        write(() -> {
+            int slot = columns.slotOf(id);
+            return slot < 0 ? 0 : delete(slot);
+        });
+    }
+
+    @Override
+    public void delete(CashCard cashCard) {
+        Assert.notNull(cashCard, "Entity must not be null");
+        deleteAll(List.of(cashCard));
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends Long> ids) {
+        Assert.notNull(ids, "Ids must not be null");
+        write(() -> {
+            for (Long id : ids) {
+                int slot = id == null ? -1 : columns.slotOf(id);
+                if (slot >= 0) {
+                    delete(slot);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends CashCard> cashCards) {
+        Assert.notNull(cashCards, "Entities must not be null");
+        write(() -> {
+            // Like Spring Data JDBC, deleting a versioned entity that is gone
+            // or has moved on is an optimistic locking failure.
+            for (CashCard cashCard : cashCards) {
+                int slot = cashCard.id() == null ? -1 : columns.slotOf(cashCard.id());
+                if (cashCard.version() != null && (slot < 0 || columns.version(slot) != cashCard.version())) {
+                    throw new OptimisticLockingFailureException("Cash card " + cashCard.id() + " has changed");
+                }
+            }
+            for (CashCard cashCard : cashCards) {
+                int slot = cashCard.id() == null ? -1 : columns.slotOf(cashCard.id());
+                if (slot >= 0) {
+                    delete(slot);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll() {
+        write(() -> {
+            for (int slot = 0; slot < columns.highWater(); slot++) {
+                if (columns.isLive(slot)) {
+                    delete(slot);
+                }
+            }
+            return null;
+        });
+    }
+
+    private <T> T read(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> mutation) {
+        lock.writeLock().lock();
+        try {
+            if (failed) {
+                throw new DataAccessResourceFailureException("The cash card log failed; restart to recover");
+            }
+            T result = mutation.get();
+            try {
+                log.commit();
+                if (log.shouldSnapshot(columns.size())) {
+                    log.snapshot(columns);
+                }
+            } catch (IOException e) {
+                throw logFailure(e);
+            }
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int ownedSlot(Long id, String owner) {
+        if (id == null || owner == null) {
+            return -1;
+        }
+        int slot = columns.slotOf(id);
+        return slot >= 0 && columns.ownerName(slot).equals(owner) ? slot : -1;
+    }
+
+    private int setAmount(int slot, long amountCents) {
+        columns.update(slot, amountCents, columns.version(slot) + 1);
+        logPut(slot);
+        return 1;
+    }
+
+    private int delete(int slot) {
+        long id = columns.id(slot);
+        columns.delete(slot);
+        try {
+            log.appendDelete(id);
+        } catch (IOException e) {
+            throw logFailure(e);
+        }
+        return 1;
+    }
+
+    private void checkSavable(CashCard cashCard, Set<Long> batchIds) {
+        toCents(cashCard.amount());
+        checkOwner(cashCard.owner());
+        if (cashCard.id() == null) {
+            return;
+        }
+        if (!batchIds.add(cashCard.id())) {
+            throw new DuplicateKeyException("Cash card " + cashCard.id() + " appears twice in the batch");
+        }
+        int slot = columns.slotOf(cashCard.id());
+        if (isNew(cashCard) && slot >= 0) {
+            throw new DuplicateKeyException("Cash card " + cashCard.id() + " already exists");
+        }
+        if (!isNew(cashCard) && (slot < 0 || columns.version(slot) != cashCard.version())) {
+            throw new OptimisticLockingFailureException("Cash card " + cashCard.id() + " has changed");
+        }
+    }
+
+    private CashCard store(CashCard cashCard) {
+        // New cards start at version 0, like the VERSION column default; updates
+        // bump it, like Spring Data JDBC does for @Version.
+        long id = cashCard.id() != null ? cashCard.id() : columns.maxId() + 1;
+        long version = isNew(cashCard) ? 0 : cashCard.version() + 1;
+        int slot = columns.put(id, toCents(cashCard.amount()), cashCard.owner(), version);
+        logPut(slot);
+        return columns.toCashCard(slot);
+    }
+
+    private static boolean isNew(CashCard cashCard) {
+        return cashCard.id() == null || cashCard.version() == null;
+    }
+
+    private void logPut(int slot) {
+        try {
+            log.appendPut(columns.id(slot), columns.cents(slot), columns.ownerName(slot), columns.version(slot));
+        } catch (IOException e) {
+            throw logFailure(e);
+        }
+    }
+
+    private DataAccessResourceFailureException logFailure(IOException e) {
+        failed = true;
+        return new DataAccessResourceFailureException("Unable to write the cash card log", e);
+    }
+
+    private List<CashCard> all() {
+        List<CashCard> cashCards = new ArrayList<>(columns.size());
+        for (int slot = 0; slot < columns.highWater(); slot++) {
+            if (columns.isLive(slot)) {
+                cashCards.add(columns.toCashCard(slot));
+            }
+        }
+        return cashCards;
+    }
+
+    private static List<CashCard> page(List<CashCard> cashCards, Sort sort, Pageable pageable) {
+        cashCards.sort(comparator(sort));
+        int start = (int) Math.min(pageable.getOffset(), cashCards.size());
+        int end = Math.min(start + pageable.getPageSize(), cashCards.size());
+        return new ArrayList<>(cashCards.subList(start, end));
+    }
+
+    /** The single id or amount order an owner index can serve directly, or null. */
+    private static Sort.Order indexedOrder(Sort sort) {
+        List<Sort.Order> orders = sort.toList();
+        if (orders.size() == 1 && CashCardCursor.SORTABLE_PROPERTIES.contains(orders.get(0).getProperty())) {
+            return orders.get(0);
+        }
+        return null;
+    }
+
+    private static Comparator<CashCard> comparator(Sort sort) {
+        Comparator<CashCard> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<CashCard> next = switch (order.getProperty()) {
+                case "id" -> Comparator.comparing(CashCard::id);
+                case "amount" -> Comparator.comparing(CashCard::amount);
+                case "owner" -> Comparator.comparing(CashCard::owner);
+                case "version" -> Comparator.comparing(CashCard::version);
+                default -> throw new IllegalArgumentException("Unsupported sort property: " + order.getProperty());
+            };
+            next = order.isAscending() ? next : next.reversed();
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        Comparator<CashCard> byId = Comparator.comparing(CashCard::id);
+        return comparator == null ? byId : comparator.thenComparing(byId);
+    }
+
+    private static long toCents(BigDecimal amount) {
+        if (amount == null) {
+            throw new DataIntegrityViolationException("AMOUNT must not be null");
+        }
+        try {
+            return amount.setScale(CashCard.AMOUNT_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new DataIntegrityViolationException("AMOUNT out of range: " + amount, e);
+        }
+    }
+
+    private static long checkedAdd(long amountCents, long deltaCents) {
+        try {
+            return Math.addExact(amountCents, deltaCents);
+        } catch (ArithmeticException e) {
+            throw new DataIntegrityViolationException("AMOUNT out of range", e);
+        }
+    }
+
+    private static void checkOwner(String owner) {
+        if (owner == null || owner.length() > MAX_OWNER_LENGTH) {
+            throw new DataIntegrityViolationException("OWNER must be between 0 and " + MAX_OWNER_LENGTH + " characters");
+        }
+    }
+}
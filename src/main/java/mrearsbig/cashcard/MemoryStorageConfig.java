@@ -0,0 +1,32 @@
+package mrearsbig.cashcard;
+
+import java.nio.file.Path;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+@Configuration
+@ConditionalOnProperty(name = "cashcard.storage", havingValue = "memory")
+public class MemoryStorageConfig {
+
+    @Bean(destroyMethod = "close")
+    CashCardLog cashCardLog(@Value("${cashcard.memory.directory}") String directory,
+            @Value("${cashcard.memory.snapshot-threshold}") long snapshotThreshold,
+            @Value("${cashcard.memory.fsync}") boolean fsync) {
+        // This bean is separate from the repository so it is still closed (and the
+        // log flushed) when the repository itself is wrapped in a metrics proxy.
+        // An empty directory keeps the cards in memory only.
+        if (!StringUtils.hasText(directory)) {
+            return CashCardLog.inMemory();
+        }
+        return new CashCardLog(Path.of(directory), snapshotThreshold, fsync);
+    }
+
+    @Bean
+    CashCardRepository cashCardRepository(CashCardLog cashCardLog,
+            @Value("${cashcard.export.fetch-size}") int exportChunkSize) {
+        return new MemoryCashCardRepository(cashCardLog, exportChunkSize);
+    }
+}
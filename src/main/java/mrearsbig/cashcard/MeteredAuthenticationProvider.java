@@ -0,0 +1,48 @@
+package mrearsbig.cashcard;
+
+import java.util.concurrent.TimeUnit;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+public class MeteredAuthenticationProvider implements AuthenticationProvider {
+    static final String TIMER_NAME = "cashcard.authentication";
+
+    private final AuthenticationProvider delegate;
+    private final Timer success;
+    private final Timer failure;
+
+    public MeteredAuthenticationProvider(AuthenticationProvider delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.success = timer(meterRegistry, "success");
+        this.failure = timer(meterRegistry, "failure");
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        long start = System.nanoTime();
+        try {
+            Authentication result = delegate.authenticate(authentication);
+            success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (AuthenticationException e) {
+            failure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder(TIMER_NAME)
+                .description("Time spent authenticating requests")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
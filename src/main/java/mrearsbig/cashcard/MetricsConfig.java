@@ -0,0 +1,37 @@
+package mrearsbig.cashcard;
+
+import java.util.function.Supplier;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    static BeanPostProcessor cashCardRepositoryMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        // This method wraps the CashCardRepository with a latency histogram and a
+        // row-count summary per method. The registry is looked up lazily so the
+        // post-processor does not force it to be created early.
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof CashCardRepository) {
+                    return instrument(bean, meterRegistry::getObject);
+                }
+                return bean;
+            }
+        };
+    }
+
+    static CashCardRepository instrument(Object repository, Supplier<MeterRegistry> meterRegistry) {
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setTarget(repository);
+        proxyFactory.addInterface(CashCardRepository.class);
+        proxyFactory.addAdvice(new RepositoryMetricsInterceptor(meterRegistry));
+        return (CashCardRepository) proxyFactory.getProxy();
+    }
+}
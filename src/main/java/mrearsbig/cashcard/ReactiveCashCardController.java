@@ -0,0 +1,259 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The cash card API on WebFlux and R2DBC, active when the application runs as a
+ * reactive web application (the {@code reactive} profile). Routes, status codes,
+ * ETags and owner scoping match {@link CashCardController}; no handler blocks a
+ * request thread while waiting for the database or a slow client.
+ */
+@RestController
+@RequestMapping("/cashcards")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCashCardController {
+    private final ReactiveCashCardRepository cashCardRepository;
+    private final int batchMaximumSize;
+    private final int changesMaximumPageSize;
+
+    private ReactiveCashCardController(ReactiveCashCardRepository cashCardRepository,
+            @Value("${cashcard.batch.maximum-size}") int batchMaximumSize,
+            @Value("${cashcard.changes.maximum-page-size}") int changesMaximumPageSize) {
+        this.cashCardRepository = cashCardRepository;
+        this.batchMaximumSize = batchMaximumSize;
+        this.changesMaximumPageSize = changesMaximumPageSize;
+    }
+
+    @GetMapping("/{id}")
+    private Mono<ResponseEntity<CashCard>> findById(@PathVariable Long id, Principal principal) {
+        return cashCardRepository.findByIdAndOwner(id, principal.getName())
+                .map(cashCard -> ResponseEntity.ok().eTag(cashCard.eTag()).body(cashCard))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping
+    private Mono<ResponseEntity<Void>> createCashCard(@RequestBody CashCard cashCard,
+            UriComponentsBuilder uriComponentsBuilder, Principal principal) {
+        return cashCardRepository.insert(cashCard.amount(), principal.getName())
+                .map(id -> {
+                    URI location = uriComponentsBuilder
+                            .path("/cashcards/{id}")
+                            .buildAndExpand(id)
+                            .toUri();
+                    return ResponseEntity.created(location).build();
+                });
+    }
+
+    @GetMapping
+    private Mono<ResponseEntity<List<CashCard>>> findAll(Pageable pageable,
+            @RequestParam(required = false) String after, Principal principal) {
+        if (after != null) {
+            return findAllAfter(after, pageable, principal);
+        }
+
+        PageRequest pageRequest = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(),
+                pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount")));
+        return cashCardRepository.findByOwner(principal.getName(), pageRequest)
+                .map(cashCards -> ResponseEntity.ok().eTag(CashCardController.listETag(cashCards)).body(cashCards));
+    }
+
+    private Mono<ResponseEntity<List<CashCard>>> findAllAfter(String after, Pageable pageable, Principal principal) {
+        Sort sort = pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount"));
+        List<Sort.Order> orders = sort.toList();
+        if (orders.size() != 1 || !CashCardCursor.SORTABLE_PROPERTIES.contains(orders.get(0).getProperty())) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        Sort.Order order = orders.get(0);
+
+        CashCardCursor cursor = null;
+        if (!after.isEmpty()) {
+            try {
+                cursor = CashCardCursor.decode(after);
+            } catch (IllegalArgumentException e) {
+                return Mono.just(ResponseEntity.badRequest().build());
+            }
+            if (!cursor.order().equals(order)) {
+                return Mono.just(ResponseEntity.badRequest().build());
+            }
+        }
+
+        int size = pageable.getPageSize();
+        return cashCardRepository.findByOwnerAfter(principal.getName(), order, cursor, size)
+                .map(cashCards -> {
+                    boolean hasNext = cashCards.size() > size;
+                    List<CashCard> content = hasNext ? cashCards.subList(0, size) : cashCards;
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .eTag(CashCardController.listETag(content));
+                    if (hasNext) {
+                        CashCard last = content.get(content.size() - 1);
+                        response.header(CashCardController.NEXT_CURSOR_HEADER,
+                                CashCardCursor.after(last, order).encode());
+                    }
+                    return response.body(content);
+                });
+    }
+
+    @GetMapping("/summary")
+    private Mono<CashCardSummary> findSummary(Principal principal) {
+        return cashCardRepository.findSummaryByOwner(principal.getName());
+    }
+
+    @GetMapping("/changes")
+    private Mono<ResponseEntity<CashCardChanges>> findChanges(@RequestParam(required = false) Long since,
+            @RequestParam(defaultValue = "100") int limit, Principal principal) {
+        // Plain polling only; waiting for changes is served by the servlet API.
+        if (limit < 1 || limit > changesMaximumPageSize) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        if (since == null) {
+            return cashCardRepository.findChangesByOwner(principal.getName(), 0, 0).map(ResponseEntity::ok);
+        }
+        return cashCardRepository.findChangesByOwner(principal.getName(), since, limit)
+                .map(changes -> changes.continueFrom(since) ? ResponseEntity.ok(changes)
+                        : ResponseEntity.status(HttpStatus.GONE).<CashCardChanges>build());
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    private Flux<CashCard> exportCashCards(Principal principal) {
+        // The encoder writes one line per card and requests more rows only as
+        // the connection drains, so a slow client holds back the cursor instead
+        // of a thread or a growing buffer.
+        return cashCardRepository.streamByOwner(principal.getName());
+    }
+
+    @PutMapping("/{id}")
+    private Mono<ResponseEntity<Void>> putCashCard(@PathVariable Long id, @RequestBody CashCard cashCardUpdate,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch, Principal principal) {
+        if (ifMatch != null && !ifMatch.trim().equals("*")) {
+            return putCashCardIfMatch(id, cashCardUpdate, ifMatch, principal);
+        }
+        return cashCardRepository.updateAmountByIdAndOwner(id, principal.getName(), cashCardUpdate.amount())
+                .map(ReactiveCashCardController::noContentOrNotFound);
+    }
+
+    private Mono<ResponseEntity<Void>> putCashCardIfMatch(Long id, CashCard cashCardUpdate, String ifMatch,
+            Principal principal) {
+        Long version = CashCardController.parseVersion(ifMatch);
+        if (version == null) {
+            return Mono.just(ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build());
+        }
+        return cashCardRepository
+                .updateAmountByIdAndOwnerAndVersion(id, principal.getName(), cashCardUpdate.amount(), version)
+                .flatMap(updated -> {
+                    if (updated > 0) {
+                        return Mono.just(ResponseEntity.noContent().eTag("\"" + (version + 1) + "\"").<Void>build());
+                    }
+                    return cashCardRepository.existsByIdAndOwner(id, principal.getName())
+                            .map(exists -> exists
+                                    ? ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).<Void>build()
+                                    : ResponseEntity.notFound().<Void>build());
+                });
+    }
+
+    @PostMapping("/{id}/credit")
+    private Mono<ResponseEntity<Void>> creditCashCard(@PathVariable Long id, @RequestBody CashCard credit,
+            Principal principal) {
+        if (!CashCardController.isPositive(credit.amount())) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return cashCardRepository.creditByIdAndOwner(id, principal.getName(), credit.amount())
+                .map(ReactiveCashCardController::noContentOrNotFound);
+    }
+
+    @PostMapping("/{id}/debit")
+    private Mono<ResponseEntity<Void>> debitCashCard(@PathVariable Long id, @RequestBody CashCard debit,
+            Principal principal) {
+        if (!CashCardController.isPositive(debit.amount())) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return cashCardRepository.debitByIdAndOwner(id, principal.getName(), debit.amount())
+                .flatMap(updated -> {
+                    if (updated > 0) {
+                        return Mono.just(ResponseEntity.noContent().<Void>build());
+                    }
+                    return cashCardRepository.existsByIdAndOwner(id, principal.getName())
+                            .map(exists -> exists
+                                    ? ResponseEntity.status(HttpStatus.CONFLICT).<Void>build()
+                                    : ResponseEntity.notFound().<Void>build());
+                });
+    }
+
+    @DeleteMapping("/{id}")
+    private Mono<ResponseEntity<Void>> deleteCashCard(@PathVariable Long id, Principal principal) {
+        return cashCardRepository.deleteByIdAndOwner(id, principal.getName())
+                .map(ReactiveCashCardController::noContentOrNotFound);
+    }
+
+    @PostMapping("/batch")
+    private Mono<ResponseEntity<List<CashCardBatchResult>>> createCashCards(@RequestBody List<CashCard> cashCards,
+            Principal principal) {
+        if (cashCards.size() > batchMaximumSize) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        List<BigDecimal> amounts = cashCards.stream().map(CashCard::amount).toList();
+        return cashCardRepository.insertAll(amounts, principal.getName())
+                .map(ids -> ResponseEntity.ok(ids.stream()
+                        .map(id -> new CashCardBatchResult(id, HttpStatus.CREATED.value()))
+                        .toList()));
+    }
+
+    @PutMapping("/batch")
+    private Mono<ResponseEntity<List<CashCardBatchResult>>> putCashCards(
+            @RequestBody List<CashCard> cashCardUpdates, Principal principal) {
+        if (cashCardUpdates.size() > batchMaximumSize
+                || cashCardUpdates.stream().anyMatch(cashCard -> cashCard.id() == null)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return cashCardRepository.updateAmountsByOwner(cashCardUpdates, principal.getName())
+                .map(counts -> ResponseEntity.ok(batchResults(cashCardUpdates.stream().map(CashCard::id).toList(),
+                        counts)));
+    }
+
+    @DeleteMapping("/batch")
+    private Mono<ResponseEntity<List<CashCardBatchResult>>> deleteCashCards(@RequestBody List<Long> ids,
+            Principal principal) {
+        if (ids.size() > batchMaximumSize || ids.contains(null)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return cashCardRepository.deleteAllByIdsAndOwner(ids, principal.getName())
+                .map(counts -> ResponseEntity.ok(batchResults(ids, counts)));
+    }
+
+    private static List<CashCardBatchResult> batchResults(List<Long> ids, List<Long> counts) {
+        List<CashCardBatchResult> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            results.add(CashCardController.batchResult(ids.get(i), counts.get(i).intValue()));
+        }
+        return results;
+    }
+
+    private static ResponseEntity<Void> noContentOrNotFound(long affectedRows) {
+        return affectedRows > 0 ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,245 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Readable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The R2DBC counterpart of {@link CashCardRepository} for the reactive API:
+ * the same owner-scoped statements, returning {@link Mono} and {@link Flux}
+ * instead of blocking. Batches run in one reactive transaction each.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+class ReactiveCashCardRepository {
+    private static final String COLUMNS = "id, amount, owner, version";
+    private static final Map<String, String> SORTABLE_COLUMNS = Map.of(
+            "id", "id", "amount", "amount", "owner", "owner", "version", "version");
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final int exportFetchSize;
+
+    ReactiveCashCardRepository(DatabaseClient databaseClient, ConnectionFactory connectionFactory,
+            @Value("${cashcard.export.fetch-size}") int exportFetchSize) {
+        this.databaseClient = databaseClient;
+        // Not a bean: a second TransactionManager in the context would make the
+        // JDBC @Transactional methods ambiguous.
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+        this.exportFetchSize = exportFetchSize;
+    }
+
+    Mono<CashCard> findByIdAndOwner(Long id, String owner) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM cash_card WHERE id = :id AND owner = :owner")
+                .bind("id", id)
+                .bind("owner", owner)
+                .map(ReactiveCashCardRepository::mapCashCard)
+                .one();
+    }
+
+    Mono<Boolean> existsByIdAndOwner(Long id, String owner) {
+        return databaseClient.sql("SELECT 1 FROM cash_card WHERE id = :id AND owner = :owner")
+                .bind("id", id)
+                .bind("owner", owner)
+                .map(row -> true)
+                .first()
+                .defaultIfEmpty(false);
+    }
+
+    /** One page of the owner's cards; unlike {@code findByOwner} it skips the total count nobody reads. */
+    Mono<List<CashCard>> findByOwner(String owner, Pageable pageable) {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM cash_card WHERE owner = :owner");
+        appendOrderBy(sql, pageable.getSort());
+        sql.append(" OFFSET :offset ROWS FETCH NEXT :limit ROWS ONLY");
+        return databaseClient.sql(sql.toString())
+                .bind("owner", owner)
+                .bind("offset", pageable.getOffset())
+                .bind("limit", pageable.getPageSize())
+                .map(ReactiveCashCardRepository::mapCashCard)
+                .all()
+                .collectList();
+    }
+
+    /** Keyset page after {@code cursor}, fetching one extra row to tell whether there is a next page. */
+    Mono<List<CashCard>> findByOwnerAfter(String owner, Sort.Order order, CashCardCursor cursor, int size) {
+        String direction = order.isAscending() ? "ASC" : "DESC";
+        String comparison = order.isAscending() ? ">" : "<";
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM cash_card WHERE owner = :owner");
+        boolean byAmount = order.getProperty().equals("amount");
+        if (cursor != null) {
+            sql.append(byAmount ? " AND (amount, id) " + comparison + " (:amount, :id)" : " AND id " + comparison + " :id");
+        }
+        sql.append(byAmount ? " ORDER BY amount " + direction + ", id " + direction : " ORDER BY id " + direction);
+        sql.append(" FETCH FIRST :limit ROWS ONLY");
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString())
+                .bind("owner", owner)
+                .bind("limit", size + 1);
+        if (cursor != null) {
+            spec = spec.bind("id", cursor.id());
+            if (byAmount) {
+                spec = spec.bind("amount", cursor.amount());
+            }
+        }
+        return spec.map(ReactiveCashCardRepository::mapCashCard).all().collectList();
+    }
+
+    /**
+     * Streams the owner's cards in id order. Rows are fetched
+     * {@code cashcard.export.fetch-size} at a time and only as fast as the
+     * subscriber (ultimately the client's connection) requests them.
+     */
+    Flux<CashCard> streamByOwner(String owner) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM cash_card WHERE owner = :owner ORDER BY id")
+                .filter(statement -> statement.fetchSize(exportFetchSize))
+                .bind("owner", owner)
+                .map(ReactiveCashCardRepository::mapCashCard)
+                .all();
+    }
+
+    Mono<CashCardChanges> findChangesByOwner(String owner, long since, int limit) {
+        // As in CashCardJdbcOperationsImpl, the latest sequence is read first so
+        // the changes read after it cannot have a hole in them.
+        Mono<Long> lastSequence = databaseClient
+                .sql("SELECT last_sequence FROM cash_card_change_sequence WHERE owner = :owner")
+                .bind("owner", owner)
+                .map(row -> row.get("last_sequence", Long.class))
+                .one()
+                .defaultIfEmpty(0L);
+        return lastSequence.flatMap(last -> databaseClient.sql("""
+                        SELECT sequence, change_type, card_id, amount, version, changed_at FROM cash_card_change
+                        WHERE owner = :owner AND sequence > :since ORDER BY sequence FETCH FIRST :limit ROWS ONLY""")
+                .bind("owner", owner)
+                .bind("since", since)
+                .bind("limit", limit)
+                .map(ReactiveCashCardRepository::mapChange)
+                .all()
+                .collectList()
+                .map(changes -> new CashCardChanges(changes,
+                        changes.isEmpty() ? last : Math.max(last, changes.get(changes.size() - 1).sequence()))));
+    }
+
+    Mono<CashCardSummary> findSummaryByOwner(String owner) {
+        return databaseClient.sql("""
+                        SELECT owner, card_count, total_amount, min_amount, max_amount FROM cash_card_summary
+                        WHERE owner = :owner""")
+                .bind("owner", owner)
+                .map(row -> new CashCardSummary(row.get("owner", String.class), row.get("card_count", Long.class),
+                        row.get("total_amount", BigDecimal.class), row.get("min_amount", BigDecimal.class),
+                        row.get("max_amount", BigDecimal.class)))
+                .one()
+                .defaultIfEmpty(CashCardSummary.empty(owner));
+    }
+
+    Mono<Long> insert(BigDecimal amount, String owner) {
+        return databaseClient.sql("INSERT INTO cash_card (amount, owner) VALUES (:amount, :owner)")
+                .filter(statement -> statement.returnGeneratedValues("id"))
+                .bind("amount", amount)
+                .bind("owner", owner)
+                .map(row -> row.get("id", Long.class))
+                .one();
+    }
+
+    Mono<List<Long>> insertAll(List<BigDecimal> amounts, String owner) {
+        return Flux.fromIterable(amounts)
+                .concatMap(amount -> insert(amount, owner))
+                .collectList()
+                .as(transactionalOperator::transactional);
+    }
+
+    Mono<Long> updateAmountByIdAndOwner(Long id, String owner, BigDecimal amount) {
+        return update("UPDATE cash_card SET amount = :amount, version = version + 1 WHERE id = :id AND owner = :owner",
+                id, owner, amount);
+    }
+
+    Mono<Long> updateAmountByIdAndOwnerAndVersion(Long id, String owner, BigDecimal amount, Long version) {
+        return databaseClient.sql("""
+                        UPDATE cash_card SET amount = :amount, version = version + 1
+                        WHERE id = :id AND owner = :owner AND version = :version""")
+                .bind("id", id)
+                .bind("owner", owner)
+                .bind("amount", amount)
+                .bind("version", version)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    Mono<Long> creditByIdAndOwner(Long id, String owner, BigDecimal amount) {
+        return update("UPDATE cash_card SET amount = amount + :amount, version = version + 1 WHERE id = :id AND owner = :owner",
+                id, owner, amount);
+    }
+
+    Mono<Long> debitByIdAndOwner(Long id, String owner, BigDecimal amount) {
+        return update("""
+                UPDATE cash_card SET amount = amount - :amount, version = version + 1
+                WHERE id = :id AND owner = :owner AND amount >= :amount""", id, owner, amount);
+    }
+
+    Mono<List<Long>> updateAmountsByOwner(List<CashCard> cashCards, String owner) {
+        return Flux.fromIterable(cashCards)
+                .concatMap(cashCard -> updateAmountByIdAndOwner(cashCard.id(), owner, cashCard.amount()))
+                .collectList()
+                .as(transactionalOperator::transactional);
+    }
+
+    Mono<Long> deleteByIdAndOwner(Long id, String owner) {
+        return databaseClient.sql("DELETE FROM cash_card WHERE id = :id AND owner = :owner")
+                .bind("id", id)
+                .bind("owner", owner)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    Mono<List<Long>> deleteAllByIdsAndOwner(List<Long> ids, String owner) {
+        return Flux.fromIterable(ids)
+                .concatMap(id -> deleteByIdAndOwner(id, owner))
+                .collectList()
+                .as(transactionalOperator::transactional);
+    }
+
+    private Mono<Long> update(String sql, Long id, String owner, BigDecimal amount) {
+        return databaseClient.sql(sql)
+                .bind("id", id)
+                .bind("owner", owner)
+                .bind("amount", amount)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static void appendOrderBy(StringBuilder sql, Sort sort) {
+        String separator = " ORDER BY ";
+        for (Sort.Order order : sort) {
+            String column = SORTABLE_COLUMNS.get(order.getProperty());
+            if (column == null) {
+                throw new IllegalArgumentException("Unsupported sort property: " + order.getProperty());
+            }
+            sql.append(separator).append(column).append(order.isAscending() ? " ASC" : " DESC");
+            separator = ", ";
+        }
+    }
+
+    private static CashCardChange mapChange(Readable row) {
+        return new CashCardChange(row.get("sequence", Long.class),
+                CashCardChange.Type.valueOf(row.get("change_type", String.class)), row.get("card_id", Long.class),
+                row.get("amount", BigDecimal.class), row.get("version", Long.class),
+                row.get("changed_at", OffsetDateTime.class).toInstant());
+    }
+
+    private static CashCard mapCashCard(Readable row) {
+        return new CashCard(row.get("id", Long.class), row.get("amount", BigDecimal.class),
+                row.get("owner", String.class), row.get("version", Long.class));
+    }
+}
@@ -0,0 +1,53 @@
+package mrearsbig.cashcard;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.web.ReactivePageableHandlerMethodArgumentResolver;
+import org.springframework.data.web.ReactiveSortHandlerMethodArgumentResolver;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.result.method.annotation.ArgumentResolverConfigurer;
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactory;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfig {
+    private static final String H2_URL_PREFIX = "jdbc:h2:";
+
+    @Bean
+    ConnectionFactory connectionFactory(DataSourceProperties dataSourceProperties) {
+        // The reactive API opens R2DBC sessions on the same H2 database that
+        // Flyway migrates over JDBC, so both see one schema and one set of rows
+        // (and the summary trigger fires for R2DBC writes too).
+        String url = dataSourceProperties.determineUrl();
+        if (url == null || !url.startsWith(H2_URL_PREFIX)) {
+            throw new IllegalStateException("The reactive API needs an H2 database, not " + url);
+        }
+        return new H2ConnectionFactory(H2ConnectionConfiguration.builder()
+                .url(url.substring(H2_URL_PREFIX.length()))
+                .username(dataSourceProperties.determineUsername())
+                .password(dataSourceProperties.determinePassword())
+                .build());
+    }
+
+    @Bean
+    DatabaseClient databaseClient(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+
+    @Bean
+    WebFluxConfigurer pageableWebFluxConfigurer() {
+        // Spring Boot only registers the Pageable and Sort resolvers for Spring MVC.
+        return new WebFluxConfigurer() {
+            @Override
+            public void configureArgumentResolvers(ArgumentResolverConfigurer configurer) {
+                configurer.addCustomResolver(new ReactiveSortHandlerMethodArgumentResolver(),
+                        new ReactivePageableHandlerMethodArgumentResolver());
+            }
+        };
+    }
+}
@@ -0,0 +1,143 @@
+package mrearsbig.cashcard;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.data.domain.Slice;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+class RepositoryMetricsInterceptor implements MethodInterceptor {
+    static final String TIMER_NAME = "cashcard.repository";
+    static final String ROWS_NAME = "cashcard.repository.rows";
+
+    private final Supplier<MeterRegistry> meterRegistry;
+    private final Map<Method, Instruments> instruments = new ConcurrentHashMap<>();
+
+    RepositoryMetricsInterceptor(Supplier<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+
+        // Meters are resolved once per method, so the hot path is two clock reads,
+        // one histogram update and one summary update.
+        Instruments methodInstruments = instruments.computeIfAbsent(method, this::register);
+        Object[] arguments = invocation.getArguments();
+        RowCounter streamedRows = countStreamedRows(arguments);
+
+        long start = System.nanoTime();
+        Object result = null;
+        try {
+            result = invocation.proceed();
+            return result;
+        } finally {
+            methodInstruments.timer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            methodInstruments.rows().record(streamedRows != null ? streamedRows.count() : rowCount(result));
+        }
+    }
+
+    private Instruments register(Method method) {
+        MeterRegistry registry = meterRegistry.get();
+        Timer timer = Timer.builder(TIMER_NAME)
+                .description("Time spent in CashCardRepository methods")
+                .tag("method", method.getName())
+                .publishPercentileHistogram()
+                .register(registry);
+        DistributionSummary rows = DistributionSummary.builder(ROWS_NAME)
+                .description("Rows returned or affected by CashCardRepository methods")
+                .tag("method", method.getName())
+                .baseUnit("rows")
+                .register(registry);
+        return new Instruments(timer, rows);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RowCounter countStreamedRows(Object[] arguments) {
+        // Streaming methods hand rows to a consumer instead of returning them, so
+        // the consumer is wrapped to count what goes through it.
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] instanceof Consumer<?> consumer) {
+                RowCounter counter = new RowCounter((Consumer<Object>) consumer);
+                arguments[i] = counter;
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    static long rowCount(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Slice<?> slice) {
+            return slice.getNumberOfElements();
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Integer affectedRows) {
+            return affectedRows;
+        }
+        if (result instanceof int[] affectedRows) {
+            long total = 0;
+            for (int count : affectedRows) {
+                total += Math.max(count, 0);
+            }
+            return total;
+        }
+        if (result instanceof Boolean exists) {
+            return exists ? 1 : 0;
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        if (result instanceof Iterable<?> iterable) {
+            long count = 0;
+            for (Object ignored : iterable) {
+                count++;
+            }
+            return count;
+        }
+        if (result instanceof Long count) {
+            return count;
+        }
+        return 1;
+    }
+
+    private record Instruments(Timer timer, DistributionSummary rows) {
+    }
+
+    private static final class RowCounter implements Consumer<Object> {
+        private final Consumer<Object> delegate;
+        private final LongAdder count = new LongAdder();
+
+        RowCounter(Consumer<Object> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void accept(Object row) {
+            count.increment();
+            delegate.accept(row);
+        }
+
+        long count() {
+            return count.sum();
+        }
+    }
+}
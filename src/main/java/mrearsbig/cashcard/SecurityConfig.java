@@ -1,64 +1,121 @@
 package mrearsbig.cashcard;
 
+import java.time.Duration;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManagerAdapter;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Configuration
 public class SecurityConfig {
 
     @Bean
-    SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    SecurityFilterChain securityFilterChain(HttpSecurity http, AuthenticationProvider authenticationProvider)
+            throws Exception {
         // This method configures the security filter chain for the application.
         // It can be customized to define security rules, such as authentication and
         // authorization.
         http.authorizeHttpRequests(requests -> requests
                 .requestMatchers("/cashcards/**")
-                .hasRole("CARD-OWNER"))
+                .hasRole("CARD-OWNER")
+                .requestMatchers("/actuator/health", "/actuator/prometheus")
+                .permitAll())
                 .httpBasic(Customizer.withDefaults())
+                .authenticationManager(new ProviderManager(authenticationProvider))
                 .csrf(csrf -> csrf.disable());
         return http.build(); // Replace with actual security filter chain configuration
     }
 
     @Bean
-    PasswordEncoder passwordEncoder() {
-        // This method provides a PasswordEncoder bean for encoding passwords.
-        // It can be customized to use different password encoding strategies.
-        return new BCryptPasswordEncoder();
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    SecurityWebFilterChain reactiveSecurityFilterChain(ServerHttpSecurity http,
+            ReactiveAuthenticationManager reactiveAuthenticationManager) {
+        // The same rules as the servlet chain above, for the reactive API.
+        http.authorizeExchange(exchanges -> exchanges
+                .pathMatchers("/cashcards/**")
+                .hasRole("CARD-OWNER")
+                .pathMatchers("/actuator/health", "/actuator/prometheus")
+                .permitAll())
+                .httpBasic(Customizer.withDefaults())
+                .authenticationManager(reactiveAuthenticationManager)
+                .csrf(csrf -> csrf.disable());
+        return http.build();
     }
 
     @Bean
-    UserDetailsService testOnlyUsers(PasswordEncoder passwordEncoder) {
-        // This method provides a UserDetailsService bean for testing purposes.
-        // It can be customized to define test users with specific roles and passwords.
-        User.UserBuilder users = User.builder();
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    ReactiveAuthenticationManager reactiveAuthenticationManager(AuthenticationProvider authenticationProvider) {
+        // Reuses the servlet provider, cache and metrics included. The adapter
+        // moves the blocking BCrypt check off the event loop.
+        return new ReactiveAuthenticationManagerAdapter(new ProviderManager(authenticationProvider));
+    }
 
-        UserDetails sarah = users
-                .username("sarah1")
-                .password(passwordEncoder.encode("abc123"))
-                .roles("CARD-OWNER")
-                .build();
+    @Bean
+    AuthenticationProvider authenticationProvider(UserDetailsService userDetailsService,
+            UserDetailsPasswordService userDetailsPasswordService, PasswordEncoder passwordEncoder,
+            MeterRegistry meterRegistry,
+            @Value("${cashcard.security.auth-cache.enabled}") boolean cacheEnabled,
+            @Value("${cashcard.security.auth-cache.maximum-size}") long cacheMaximumSize,
+            @Value("${cashcard.security.auth-cache.time-to-live}") Duration cacheTimeToLive) {
+        // Basic auth sends the password on every request, so without the cache
+        // each call pays for a full BCrypt check.
+        DaoAuthenticationProvider daoAuthenticationProvider = new DaoAuthenticationProvider(userDetailsService);
+        daoAuthenticationProvider.setPasswordEncoder(passwordEncoder);
+        daoAuthenticationProvider.setUserDetailsPasswordService(userDetailsPasswordService);
 
-        UserDetails hankOwnsNoCards = users
-                .username("hank-owns-no-cards")
-                .password(passwordEncoder.encode("qrs456"))
-                .roles("NON-OWNER")
-                .build();
+        if (!cacheEnabled) {
+            return new MeteredAuthenticationProvider(daoAuthenticationProvider, meterRegistry);
+        }
 
-        UserDetails kumar = users
-                .username("kumar2")
-                .password(passwordEncoder.encode("xyz789"))
-                .roles("CARD-OWNER")
-                .build();
+        CachingAuthenticationProvider cachingAuthenticationProvider = new CachingAuthenticationProvider(
+                daoAuthenticationProvider, userDetailsService, cacheMaximumSize, cacheTimeToLive);
+        FunctionCounter.builder("cashcard.authentication.cache", cachingAuthenticationProvider,
+                        CachingAuthenticationProvider::hitCount)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("cashcard.authentication.cache", cachingAuthenticationProvider,
+                        CachingAuthenticationProvider::missCount)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        return new MeteredAuthenticationProvider(cachingAuthenticationProvider, meterRegistry);
+    }
 
-        return new InMemoryUserDetailsManager(sarah, hankOwnsNoCards, kumar);
+    @Bean
+    PasswordEncoder passwordEncoder(@Value("${cashcard.security.password-strength}") int strength) {
+        // Stored hashes with a lower strength still match; a successful login
+        // replaces them through the user store's UserDetailsPasswordService.
+        return new BCryptPasswordEncoder(strength);
+    }
+
+    @Bean
+    CashCardUserStore cashCardUserStore(ObjectProvider<DataSource> dataSource,
+            ObjectProvider<CashCardShards> shards,
+            @Value("${cashcard.users.batch-size}") int batchSize,
+            @Value("${cashcard.users.refresh-interval}") Duration refreshInterval) {
+        // The routing DataSource of sharded storage has no shard selected here;
+        // the users table is read from the first shard, like the owner pins.
+        CashCardShards cashCardShards = shards.getIfAvailable();
+        DataSource users = cashCardShards != null ? cashCardShards.dataSource(cashCardShards.names().get(0))
+                : dataSource.getObject();
+        return new CashCardUserStore(users, batchSize, refreshInterval);
     }
 }
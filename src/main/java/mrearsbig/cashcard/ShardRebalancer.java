@@ -0,0 +1,178 @@
+package mrearsbig.cashcard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves an owner's cards from one shard to another while the application keeps
+ * serving them. The cards are first copied without blocking anyone; then the
+ * owner's calls are held back just long enough to copy what changed in the
+ * meantime and switch the owner to the new shard. The old copy is deleted last.
+ * The owner's change feed travels with the cards, keeping its sequence.
+ *
+ * <p>A crash before the switch leaves a partial copy on the target, and one
+ * after it leaves the old copy on the source. Neither is ever read, and the
+ * next move to that shard replaces it.
+ */
+@Component
+@Endpoint(id = "cashcardshards")
+@ConditionalOnProperty(name = "cashcard.storage", havingValue = "sharded")
+public class ShardRebalancer {
+    private static final Logger logger = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    private static final String SELECT_BY_OWNER = "SELECT id, amount, owner, version FROM cash_card WHERE owner = ?";
+    private static final String SELECT_VERSIONS = "SELECT id, version FROM cash_card WHERE owner = ?";
+    private static final String INSERT = "INSERT INTO cash_card (id, amount, owner, version) VALUES (?, ?, ?, ?)";
+    private static final String MERGE = """
+            MERGE INTO cash_card (id, amount, owner, version) KEY (id) VALUES (?, ?, ?, ?)""";
+    private static final String DELETE_BY_ID = "DELETE FROM cash_card WHERE id = ?";
+    private static final String DELETE_BY_OWNER = "DELETE FROM cash_card WHERE owner = ?";
+    private static final String COUNT = "SELECT COUNT(*) FROM cash_card";
+    private static final String SELECT_CHANGES = """
+            SELECT owner, sequence, card_id, change_type, amount, version, changed_at FROM cash_card_change
+            WHERE owner = ?""";
+    private static final String INSERT_CHANGE = """
+            INSERT INTO cash_card_change (owner, sequence, card_id, change_type, amount, version, changed_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?)""";
+    private static final String DELETE_CHANGES = "DELETE FROM cash_card_change WHERE owner = ?";
+    private static final String SELECT_CHANGE_SEQUENCE = """
+            SELECT owner, last_sequence FROM cash_card_change_sequence WHERE owner = ?""";
+    private static final String INSERT_CHANGE_SEQUENCE = """
+            INSERT INTO cash_card_change_sequence (owner, last_sequence) VALUES (?, ?)""";
+    private static final String DELETE_CHANGE_SEQUENCE = "DELETE FROM cash_card_change_sequence WHERE owner = ?";
+
+    private final CashCardShards shards;
+    private final ShardRouter shardRouter;
+
+    /** Cards stored on each shard, and the owners that are not on their ring shard. */
+    public record Layout(Map<String, Long> cards, Map<String, String> pinnedOwners) {
+    }
+
+    ShardRebalancer(CashCardShards shards, ShardRouter shardRouter) {
+        this.shards = shards;
+        this.shardRouter = shardRouter;
+    }
+
+    @ReadOperation
+    public Layout layout() {
+        Map<String, Long> cards = new LinkedHashMap<>();
+        for (String shard : shards.names()) {
+            cards.put(shard, new JdbcTemplate(shards.dataSource(shard)).queryForObject(COUNT, Long.class));
+        }
+        return new Layout(cards, shardRouter.pins());
+    }
+
+    /** Moves the owner's cards to {@code shard} and returns how many were moved. */
+    @WriteOperation
+    public synchronized int move(@Selector String owner, String shard) {
+        DataSource target = shards.dataSource(shard);
+        String source = shardRouter.shardFor(owner);
+        if (source.equals(shard)) {
+            return 0;
+        }
+        JdbcTemplate from = new JdbcTemplate(shards.dataSource(source));
+        JdbcTemplate to = new JdbcTemplate(target);
+        TransactionTemplate toTransaction = new TransactionTemplate(new DataSourceTransactionManager(target));
+
+        // Anything of this owner's already on the target is left over from an
+        // interrupted move, so the copy replaces it.
+        List<CashCard> cashCards = from.query(SELECT_BY_OWNER,
+                (resultSet, rowNum) -> CashCardJdbcOperationsImpl.mapCashCard(resultSet), owner);
+        toTransaction.executeWithoutResult(status -> {
+            to.update(DELETE_BY_OWNER, owner);
+            to.batchUpdate(INSERT, parameters(cashCards));
+        });
+
+        Lock lock = shardRouter.moveLock(owner);
+        lock.lock();
+        try {
+            // Only rows whose version moved on since the copy, or that were
+            // created or deleted, need another trip.
+            List<CashCard> current = from.query(SELECT_BY_OWNER,
+                    (resultSet, rowNum) -> CashCardJdbcOperationsImpl.mapCashCard(resultSet), owner);
+            toTransaction.executeWithoutResult(status -> {
+                Map<Long, Long> copied = new HashMap<>();
+                to.query(SELECT_VERSIONS, resultSet -> {
+                    copied.put(resultSet.getLong("id"), resultSet.getLong("version"));
+                }, owner);
+                List<CashCard> changed = new ArrayList<>();
+                for (CashCard cashCard : current) {
+                    Long version = copied.remove(cashCard.id());
+                    if (!cashCard.version().equals(version)) {
+                        changed.add(cashCard);
+                    }
+                }
+                to.batchUpdate(MERGE, parameters(changed));
+                to.batchUpdate(DELETE_BY_ID, copied.keySet().stream().map(id -> new Object[] { id }).toList());
+
+                // The copies above were logged as fresh changes on the target; the
+                // owner's real feed and sequence replace them, so clients carry on
+                // from the same sequence number.
+                to.update(DELETE_CHANGES, owner);
+                to.update(DELETE_CHANGE_SEQUENCE, owner);
+                to.batchUpdate(INSERT_CHANGE, rows(from, SELECT_CHANGES, owner));
+                to.batchUpdate(INSERT_CHANGE_SEQUENCE, rows(from, SELECT_CHANGE_SEQUENCE, owner));
+            });
+            shardRouter.assign(owner, shard);
+            cashCards = current;
+        } finally {
+            lock.unlock();
+        }
+
+        // Calls for this owner go to the target from here on.
+        new TransactionTemplate(new DataSourceTransactionManager(shards.dataSource(source)))
+                .executeWithoutResult(status -> {
+                    from.update(DELETE_BY_OWNER, owner);
+                    from.update(DELETE_CHANGES, owner);
+                    from.update(DELETE_CHANGE_SEQUENCE, owner);
+                });
+        logger.info("Moved {} cards of owner {} from {} to {}", cashCards.size(), owner, source, shard);
+        return cashCards.size();
+    }
+
+    /**
+     * Moves every pinned owner back to the shard the ring assigns it, such as
+     * after a shard was added, and returns the owners that were moved.
+     */
+    @WriteOperation
+    public List<String> rebalance() {
+        List<String> moved = new ArrayList<>();
+        for (String owner : shardRouter.pins().keySet()) {
+            move(owner, shardRouter.ringShardFor(owner));
+            moved.add(owner);
+        }
+        return moved;
+    }
+
+    private static List<Object[]> rows(JdbcTemplate jdbcTemplate, String sql, String owner) {
+        return jdbcTemplate.query(sql, (resultSet, rowNum) -> {
+            Object[] row = new Object[resultSet.getMetaData().getColumnCount()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = resultSet.getObject(i + 1);
+            }
+            return row;
+        }, owner);
+    }
+
+    private static List<Object[]> parameters(List<CashCard> cashCards) {
+        return cashCards.stream()
+                .map(cashCard -> new Object[] { cashCard.id(), cashCard.amount(), cashCard.owner(), cashCard.version() })
+                .toList();
+    }
+}
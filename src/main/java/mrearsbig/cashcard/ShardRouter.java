@@ -0,0 +1,116 @@
+package mrearsbig.cashcard;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Decides which shard holds an owner's cards: the one the consistent hash ring
+ * picks, unless the owner is pinned elsewhere in {@code cash_card_owner_shard}.
+ * A pin means the cards are not where the ring says, either because they were
+ * moved on purpose or because the ring changed (a shard was added) and they
+ * have not been moved yet. Pins are kept on the first shard.
+ *
+ * <p>Every repository call holds the read lock of its owner's stripe (an
+ * export holds it per page); moving an owner takes the write lock while it
+ * switches shards, so no call straddles the switch.
+ */
+class ShardRouter {
+    private static final Logger logger = LoggerFactory.getLogger(ShardRouter.class);
+    private static final int LOCK_STRIPES = 64;
+
+    private final CashCardShards shards;
+    private final ConsistentHashRing ring;
+    private final JdbcTemplate directory;
+    private final ConcurrentHashMap<String, String> pins = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[LOCK_STRIPES];
+
+    ShardRouter(CashCardShards shards, int virtualNodes) {
+        this.shards = shards;
+        this.ring = new ConsistentHashRing(shards.names(), virtualNodes);
+        this.directory = new JdbcTemplate(shards.dataSource(shards.names().get(0)));
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+
+        directory.query("SELECT owner, shard FROM cash_card_owner_shard", resultSet -> {
+            String owner = resultSet.getString("owner");
+            String shard = resultSet.getString("shard");
+            // Dropping a pin to a shard that is no longer configured would hide
+            // the owner's cards, so refuse to start instead.
+            shards.dataSource(shard);
+            pins.put(owner, shard);
+        });
+        pinStrays();
+    }
+
+    String shardFor(String owner) {
+        String pinned = pins.get(owner);
+        return pinned != null ? pinned : ring.shardFor(owner);
+    }
+
+    String ringShardFor(String owner) {
+        return ring.shardFor(owner);
+    }
+
+    Map<String, String> pins() {
+        return Map.copyOf(pins);
+    }
+
+    /** Held by every call for the owner, for as long as the call runs; never while waiting on a client. */
+    Lock callLock(String owner) {
+        return lockFor(owner).readLock();
+    }
+
+    /** Held while an owner switches shards; no call for the owner runs meanwhile. */
+    Lock moveLock(String owner) {
+        return lockFor(owner).writeLock();
+    }
+
+    /** Records that the owner's cards now live on {@code shard}. */
+    void assign(String owner, String shard) {
+        if (shard.equals(ring.shardFor(owner))) {
+            directory.update("DELETE FROM cash_card_owner_shard WHERE owner = ?", owner);
+            pins.remove(owner);
+        } else {
+            directory.update("MERGE INTO cash_card_owner_shard (owner, shard) KEY (owner) VALUES (?, ?)", owner, shard);
+            pins.put(owner, shard);
+        }
+    }
+
+    private ReentrantReadWriteLock lockFor(String owner) {
+        return locks[Math.floorMod(owner.hashCode(), LOCK_STRIPES)];
+    }
+
+    private void pinStrays() {
+        // An unpinned owner whose cards are on a shard other than its ring shard
+        // was placed by an older ring; pin it where the cards are until it is
+        // rebalanced. Cards on the ring shard win, since a copy elsewhere can only
+        // be left over from an interrupted move.
+        Set<String> onRingShard = new HashSet<>();
+        Map<String, String> elsewhere = new HashMap<>();
+        for (String shard : shards.names()) {
+            new JdbcTemplate(shards.dataSource(shard)).query("SELECT DISTINCT owner FROM cash_card", resultSet -> {
+                String owner = resultSet.getString("owner");
+                if (ring.shardFor(owner).equals(shard)) {
+                    onRingShard.add(owner);
+                } else {
+                    elsewhere.putIfAbsent(owner, shard);
+                }
+            });
+        }
+        elsewhere.forEach((owner, shard) -> {
+            if (!onRingShard.contains(owner) && !pins.containsKey(owner)) {
+                logger.info("Pinning owner {} to {} until it is rebalanced", owner, shard);
+                assign(owner, shard);
+            }
+        });
+    }
+}
@@ -0,0 +1,54 @@
+package mrearsbig.cashcard;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * DataSource that hands out connections of the shard selected for the current
+ * thread. Asking for a connection with no shard selected means a query that is
+ * not owner-scoped, so it fails instead of quietly picking a shard.
+ */
+class ShardRoutingDataSource extends AbstractRoutingDataSource {
+    private static final ThreadLocal<String> currentShard = new ThreadLocal<>();
+
+    ShardRoutingDataSource(Map<String, ? extends DataSource> shards) {
+        setTargetDataSources(new HashMap<>(shards));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Selects a shard for the current thread and returns the previous selection,
+     * which the caller passes to {@link #restore} when it is done. A transaction
+     * holds on to one connection, so a call nested in another may not switch to a
+     * different shard.
+     */
+    static String select(String shard) {
+        String previous = currentShard.get();
+        if (previous != null && !previous.equals(shard)) {
+            throw new IllegalStateException("Cannot switch from shard " + previous + " to " + shard
+                    + " inside a call that is already routed");
+        }
+        currentShard.set(shard);
+        return previous;
+    }
+
+    static void restore(String previous) {
+        if (previous == null) {
+            currentShard.remove();
+        } else {
+            currentShard.set(previous);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String shard = currentShard.get();
+        if (shard == null) {
+            throw new IllegalStateException("No shard selected; only owner-scoped CashCardRepository calls can be routed");
+        }
+        return shard;
+    }
+}
@@ -0,0 +1,146 @@
+package mrearsbig.cashcard;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Runs each {@link CashCardRepository} call on the shard of the owner it is
+ * scoped to: its {@code owner} argument, or the owner of the cards it saves.
+ * Calls that are not owner-scoped, such as {@code findAll()}, would have to
+ * visit every shard and are rejected.
+ *
+ * <p>{@code streamByOwner} hands every card to a consumer that may write to a
+ * slow client, so it is not run under the owner's lock as a whole: the cards
+ * are read in keyset pages of {@code exportPageSize}, each under the lock, and
+ * handed over outside it. A move can then take the lock between two pages; the
+ * next page is read from the new shard and continues after the same id.
+ */
+class ShardRoutingInterceptor implements MethodInterceptor {
+    private static final int NO_OWNER_PARAMETER = -1;
+
+    private static final Sort.Order BY_ID = Sort.Order.asc("id");
+
+    private final ShardRouter shardRouter;
+    private final int exportPageSize;
+    private final ConcurrentHashMap<Method, Integer> ownerParameters = new ConcurrentHashMap<>();
+
+    ShardRoutingInterceptor(ShardRouter shardRouter, int exportPageSize) {
+        this.shardRouter = shardRouter;
+        this.exportPageSize = exportPageSize;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+        String owner = owner(invocation);
+        if (owner == null) {
+            // saveAll with nothing to save touches no shard at all.
+            return Iterable.class.isAssignableFrom(method.getReturnType()) ? List.of() : null;
+        }
+        if (method.getName().equals("streamByOwner") && invocation.getThis() instanceof CashCardRepository target) {
+            @SuppressWarnings("unchecked")
+            Consumer<CashCard> consumer = (Consumer<CashCard>) invocation.getArguments()[1];
+            streamInPages(target, owner, consumer);
+            return null;
+        }
+        return routed(owner, invocation::proceed);
+    }
+
+    private void streamInPages(CashCardRepository target, String owner, Consumer<CashCard> consumer)
+            throws Throwable {
+        CashCardCursor cursor = null;
+        Slice<CashCard> page;
+        do {
+            CashCardCursor after = cursor;
+            page = routed(owner, () -> target.findByOwnerAfter(owner, BY_ID, after, exportPageSize));
+            page.forEach(consumer);
+            if (page.hasContent()) {
+                cursor = CashCardCursor.after(page.getContent().get(page.getNumberOfElements() - 1), BY_ID);
+            }
+        } while (page.hasNext());
+    }
+
+    private <T> T routed(String owner, RoutedCall<T> call) throws Throwable {
+        // The shard is looked up under the lock, so a move cannot switch it
+        // between the lookup and the query.
+        Lock lock = shardRouter.callLock(owner);
+        lock.lock();
+        try {
+            String previous = ShardRoutingDataSource.select(shardRouter.shardFor(owner));
+            try {
+                return call.proceed();
+            } finally {
+                ShardRoutingDataSource.restore(previous);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RoutedCall<T> {
+        T proceed() throws Throwable;
+    }
+
+    private String owner(MethodInvocation invocation) {
+        Method method = invocation.getMethod();
+        Object[] arguments = invocation.getArguments();
+        int index = ownerParameters.computeIfAbsent(method, ShardRoutingInterceptor::ownerParameter);
+        if (index != NO_OWNER_PARAMETER) {
+            return requireOwner((String) arguments[index]);
+        }
+        if (arguments.length == 1 && arguments[0] instanceof CashCard cashCard) {
+            return requireOwner(cashCard.owner());
+        }
+        if (arguments.length == 1 && arguments[0] instanceof Iterable<?> cashCards
+                && method.getName().equals("saveAll")) {
+            return singleOwner(cashCards.iterator());
+        }
+        throw new IllegalStateException(
+                method.getName() + " is not owner-scoped and cannot be routed to a shard");
+    }
+
+    private static String singleOwner(Iterator<?> cashCards) {
+        if (!cashCards.hasNext()) {
+            return null;
+        }
+        String owner = requireOwner(((CashCard) cashCards.next()).owner());
+        while (cashCards.hasNext()) {
+            if (!owner.equals(((CashCard) cashCards.next()).owner())) {
+                throw new IllegalArgumentException("saveAll cannot save cards of several owners across shards");
+            }
+        }
+        return owner;
+    }
+
+    private static String requireOwner(String owner) {
+        if (owner == null) {
+            throw new IllegalArgumentException("A card without an owner cannot be routed to a shard");
+        }
+        return owner;
+    }
+
+    private static int ownerParameter(Method method) {
+        // Parameter names are kept by the -parameters flag that the Spring Boot
+        // Gradle plugin adds, the same ones the derived queries bind by name.
+        Parameter[] parameters = method.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i].getType() == String.class && parameters[i].getName().equals("owner")) {
+                return i;
+            }
+        }
+        return NO_OWNER_PARAMETER;
+    }
+}
@@ -0,0 +1,98 @@
+package mrearsbig.cashcard;
+
+import java.util.List;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jdbc.core.dialect.JdbcH2Dialect;
+import org.springframework.data.relational.core.dialect.Dialect;
+import org.springframework.data.relational.core.mapping.event.BeforeConvertCallback;
+
+@Configuration
+@ConditionalOnProperty(name = "cashcard.storage", havingValue = "sharded")
+public class ShardingConfig {
+
+    ShardingConfig(@Value("${cashcard.write-behind.enabled}") boolean writeBehind) {
+        // The write-behind applier writes many owners in one transaction, which
+        // cannot span shards.
+        if (writeBehind) {
+            throw new IllegalStateException("cashcard.write-behind.enabled cannot be combined with sharded storage");
+        }
+    }
+
+    @Bean(destroyMethod = "close")
+    CashCardShards cashCardShards(@Value("${cashcard.sharding.urls}") List<String> urls,
+            @Value("${cashcard.sharding.username}") String username,
+            @Value("${cashcard.sharding.password}") String password,
+            @Value("${spring.flyway.locations:classpath:db/migration}") String[] locations) {
+        // Spring Boot's Flyway integration only migrates the primary DataSource,
+        // so the sharded profile turns it off and every shard is migrated here.
+        CashCardShards shards = new CashCardShards(urls, username, password);
+        try {
+            for (DataSource dataSource : shards.dataSources().values()) {
+                Flyway.configure()
+                        .dataSource(dataSource)
+                        .locations(locations)
+                        .baselineOnMigrate(true)
+                        .baselineVersion("1")
+                        .load()
+                        .migrate();
+            }
+        } catch (RuntimeException e) {
+            shards.close();
+            throw e;
+        }
+        return shards;
+    }
+
+    @Bean
+    ShardRouter shardRouter(CashCardShards cashCardShards,
+            @Value("${cashcard.sharding.virtual-nodes}") int virtualNodes) {
+        return new ShardRouter(cashCardShards, virtualNodes);
+    }
+
+    @Bean
+    DataSource dataSource(CashCardShards cashCardShards) {
+        return new ShardRoutingDataSource(cashCardShards.dataSources());
+    }
+
+    @Bean
+    Dialect jdbcDialect() {
+        // Spring Data JDBC would otherwise open a connection at startup to detect
+        // the dialect, before any shard is selected.
+        return JdbcH2Dialect.INSTANCE;
+    }
+
+    @Bean
+    BeforeConvertCallback<CashCard> cashCardIds(@Value("${cashcard.sharding.node-id}") int nodeId) {
+        // Identity columns count per shard, so the ids of new cards come from the
+        // application instead. Ids stay with a card when its owner moves shards.
+        CashCardIdGenerator idGenerator = new CashCardIdGenerator(nodeId);
+        return cashCard -> cashCard.id() != null ? cashCard
+                : new CashCard(idGenerator.nextId(), cashCard.amount(), cashCard.owner(), cashCard.version());
+    }
+
+    @Bean
+    static BeanPostProcessor cashCardRepositorySharding(ObjectProvider<ShardRouter> shardRouter,
+            @Value("${cashcard.export.fetch-size}") int exportPageSize) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof CashCardRepository) {
+                    ProxyFactory proxyFactory = new ProxyFactory();
+                    proxyFactory.setTarget(bean);
+                    proxyFactory.addInterface(CashCardRepository.class);
+                    proxyFactory.addAdvice(new ShardRoutingInterceptor(shardRouter.getObject(), exportPageSize));
+                    return proxyFactory.getProxy();
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,63 @@
+package mrearsbig.cashcard;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import com.zaxxer.hikari.HikariDataSource;
+
+@Configuration
+public class ThreadingConfig {
+
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    FilterRegistrationBean<ConnectionPoolAdmissionFilter> connectionPoolAdmissionFilter(DataSource dataSource,
+            ObjectProvider<CashCardShards> shards,
+            @Value("${cashcard.threads.admission-permits:#{null}}") Integer admissionPermits,
+            @Value("${cashcard.threads.admission-timeout}") Duration admissionTimeout) {
+        // This method only applies when spring.threads.virtual.enabled=true, which
+        // switches Tomcat (and so every controller and repository call) to virtual
+        // threads. The number of requests that may touch the database at once is
+        // capped at the size of the connection pool, or at admission-permits when
+        // that is set.
+        int permits = admissionPermits != null ? admissionPermits : maximumPoolSize(dataSource, shards);
+        ConnectionPoolAdmissionFilter filter = new ConnectionPoolAdmissionFilter(permits, admissionTimeout);
+
+        FilterRegistrationBean<ConnectionPoolAdmissionFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/cashcards/*");
+        // Run after Spring Security so that rejected credentials never take a permit.
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        return registration;
+    }
+
+    private static int maximumPoolSize(DataSource dataSource, ObjectProvider<CashCardShards> shards) {
+        // Sharded storage routes each request to one of several pools, so all of
+        // them together bound the requests that can hold a connection.
+        CashCardShards cashCardShards = shards.getIfAvailable();
+        if (cashCardShards != null) {
+            return cashCardShards.dataSources().values().stream()
+                    .mapToInt(shard -> hikari(shard).getMaximumPoolSize())
+                    .sum();
+        }
+        return hikari(dataSource).getMaximumPoolSize();
+    }
+
+    private static HikariDataSource hikari(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot inspect the JDBC connection pool", e);
+        }
+        throw new IllegalStateException("The JDBC connection pool is not HikariCP, so its size is unknown; "
+                + "set cashcard.threads.admission-permits");
+    }
+}
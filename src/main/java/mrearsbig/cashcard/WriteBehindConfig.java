@@ -0,0 +1,43 @@
+package mrearsbig.cashcard;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+@ConditionalOnProperty(name = "cashcard.write-behind.enabled", havingValue = "true")
+public class WriteBehindConfig {
+
+    @Bean(destroyMethod = "close")
+    CashCardJournal cashCardJournal(@Value("${cashcard.write-behind.journal}") Path journal,
+            @Value("${cashcard.write-behind.journal-size}") DataSize journalSize) throws IOException {
+        return new CashCardJournal(journal, Math.toIntExact(journalSize.toBytes()));
+    }
+
+    @Bean(destroyMethod = "close")
+    @Lazy(false)
+    CashCardWriteBehind cashCardWriteBehind(CashCardRepository cashCardRepository, CashCardCache cashCardCache,
+            TransactionTemplate transactionTemplate, CashCardJournal cashCardJournal,
+            ObjectProvider<CashCardChangeFeed> changeFeed,
+            @Value("${cashcard.write-behind.node-id}") int nodeId,
+            @Value("${cashcard.write-behind.batch-size}") int batchSize,
+            @Value("${cashcard.write-behind.apply-interval}") Duration applyInterval,
+            @Value("${cashcard.write-behind.apply-timeout}") Duration applyTimeout,
+            @Value("${cashcard.write-behind.max-attempts}") int maxAttempts, MeterRegistry meterRegistry) {
+        // The journal bean is destroyed after this one, so pending entries are
+        // applied before it is closed. Never lazy: entries left in the journal by
+        // the last run are applied at startup, not on the first request.
+        return new CashCardWriteBehind(cashCardRepository, cashCardCache, transactionTemplate, cashCardJournal,
+                changeFeed.getIfAvailable(), new CashCardIdGenerator(nodeId), batchSize, applyInterval,
+                applyTimeout, maxAttempts, meterRegistry);
+    }
+}
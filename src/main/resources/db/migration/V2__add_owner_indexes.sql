@@ -0,0 +1,5 @@
+-- Every query on cash_card is scoped to an owner. These indexes cover the
+-- owner-scoped lookups by id and the default amount ordering (with id as the
+-- tie-breaker used by keyset pagination), so none of them scans the table.
+CREATE INDEX cash_card_owner_amount_id_idx ON cash_card (OWNER, AMOUNT, ID);
+CREATE INDEX cash_card_owner_id_idx ON cash_card (OWNER, ID);
@@ -0,0 +1,3 @@
+-- Optimistic concurrency: every update bumps VERSION, and conditional updates
+-- only apply when the client's version is still current.
+ALTER TABLE cash_card ADD COLUMN VERSION BIGINT NOT NULL DEFAULT 0;
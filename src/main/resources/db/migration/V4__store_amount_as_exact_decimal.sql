@@ -0,0 +1,3 @@
+-- Amounts are money: store them as exact decimals with two fractional digits
+-- so that server-side credits and debits never accumulate rounding errors.
+ALTER TABLE cash_card ALTER COLUMN AMOUNT SET DATA TYPE NUMERIC(19, 2);
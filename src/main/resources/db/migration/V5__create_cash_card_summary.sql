@@ -0,0 +1,17 @@
+-- Per-owner aggregates for GET /cashcards/summary. CashCardSummaryTrigger
+-- updates the owner's row in the same transaction as every change to
+-- cash_card; an owner's row exists exactly while they have cards.
+CREATE TABLE cash_card_summary
+(
+    OWNER        VARCHAR(256) PRIMARY KEY,
+    CARD_COUNT   BIGINT         NOT NULL,
+    TOTAL_AMOUNT NUMERIC(38, 2) NOT NULL,
+    MIN_AMOUNT   NUMERIC(19, 2) NOT NULL,
+    MAX_AMOUNT   NUMERIC(19, 2) NOT NULL
+);
+
+INSERT INTO cash_card_summary (OWNER, CARD_COUNT, TOTAL_AMOUNT, MIN_AMOUNT, MAX_AMOUNT)
+SELECT OWNER, COUNT(*), SUM(AMOUNT), MIN(AMOUNT), MAX(AMOUNT) FROM cash_card GROUP BY OWNER;
+
+CREATE TRIGGER cash_card_summary_trigger AFTER INSERT, UPDATE, DELETE ON cash_card
+    FOR EACH ROW CALL 'mrearsbig.cashcard.CashCardSummaryTrigger';
@@ -0,0 +1,8 @@
+-- Owners whose cards are not on the shard the hash ring assigns them, used by
+-- sharded storage (see ShardRouter). Only the first shard's table is read; a
+-- single database leaves it empty.
+CREATE TABLE cash_card_owner_shard
+(
+    OWNER VARCHAR(256) PRIMARY KEY,
+    SHARD VARCHAR(64)  NOT NULL
+);
@@ -0,0 +1,27 @@
+-- Change feed for GET /cashcards/changes. CashCardChangeTrigger appends one
+-- row per created, updated or deleted card, in the writer's transaction, with
+-- the next number of the owner's gapless sequence. CashCardChangeCompactor
+-- deletes rows older than the retention window; the sequence rows stay, so
+-- numbering never restarts.
+CREATE TABLE cash_card_change_sequence
+(
+    OWNER         VARCHAR(256) PRIMARY KEY,
+    LAST_SEQUENCE BIGINT NOT NULL
+);
+
+CREATE TABLE cash_card_change
+(
+    OWNER       VARCHAR(256)             NOT NULL,
+    SEQUENCE    BIGINT                   NOT NULL,
+    CARD_ID     BIGINT                   NOT NULL,
+    CHANGE_TYPE VARCHAR(6)               NOT NULL,
+    AMOUNT      NUMERIC(19, 2),
+    VERSION     BIGINT,
+    CHANGED_AT  TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    PRIMARY KEY (OWNER, SEQUENCE)
+);
+
+CREATE INDEX cash_card_change_changed_at ON cash_card_change (CHANGED_AT);
+
+CREATE TRIGGER cash_card_change_trigger AFTER INSERT, UPDATE, DELETE ON cash_card
+    FOR EACH ROW CALL 'mrearsbig.cashcard.CashCardChangeTrigger';
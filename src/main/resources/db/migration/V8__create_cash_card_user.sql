@@ -0,0 +1,13 @@
+-- Users for HTTP Basic authentication, read by CashCardUserStore. PASSWORD is
+-- a BCrypt hash, so nothing is encoded at startup; a hash with a lower cost
+-- than cashcard.security.password-strength is replaced on the next login.
+-- ROLES is a comma-separated list without the ROLE_ prefix. Users are
+-- provisioned outside the migrations; the test users come with the test data.
+CREATE TABLE cash_card_user
+(
+    USERNAME VARCHAR(256) PRIMARY KEY,
+    PASSWORD VARCHAR(100) NOT NULL,
+    ROLES    VARCHAR(256) NOT NULL,
+    ENABLED  BOOLEAN      NOT NULL DEFAULT TRUE
+);
+
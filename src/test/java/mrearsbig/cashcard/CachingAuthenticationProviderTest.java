@@ -0,0 +1,101 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+class CachingAuthenticationProviderTest {
+
+    private PasswordEncoder passwordEncoder;
+    private InMemoryUserDetailsManager users;
+    private CachingAuthenticationProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        passwordEncoder = new BCryptPasswordEncoder(4);
+        users = new InMemoryUserDetailsManager(User.builder()
+                .username("sarah1")
+                .password(passwordEncoder.encode("abc123"))
+                .roles("CARD-OWNER")
+                .build());
+
+        DaoAuthenticationProvider daoAuthenticationProvider = new DaoAuthenticationProvider(users);
+        daoAuthenticationProvider.setPasswordEncoder(passwordEncoder);
+
+        provider = new CachingAuthenticationProvider(daoAuthenticationProvider, users, 100, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void shouldServeRepeatedAuthenticationsFromTheCache() {
+        Authentication first = provider.authenticate(token("sarah1", "abc123"));
+        Authentication second = provider.authenticate(token("sarah1", "abc123"));
+
+        assertThat(first.isAuthenticated()).isTrue();
+        assertThat(second.isAuthenticated()).isTrue();
+        assertThat(second.getName()).isEqualTo("sarah1");
+        assertThat(second.getAuthorities()).extracting("authority").containsExactly("ROLE_CARD-OWNER");
+        assertThat(provider.missCount()).isEqualTo(1);
+        assertThat(provider.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotCacheBadCredentials() {
+        assertThatThrownBy(() -> provider.authenticate(token("sarah1", "BAD-PASSWORD")))
+                .isInstanceOf(BadCredentialsException.class);
+        assertThatThrownBy(() -> provider.authenticate(token("sarah1", "BAD-PASSWORD")))
+                .isInstanceOf(BadCredentialsException.class);
+
+        assertThat(provider.hitCount()).isZero();
+        assertThat(provider.size()).isZero();
+    }
+
+    @Test
+    void shouldRejectTheOldPasswordAfterAPasswordChange() {
+        provider.authenticate(token("sarah1", "abc123"));
+
+        users.updateUser(User.builder()
+                .username("sarah1")
+                .password(passwordEncoder.encode("new-secret"))
+                .roles("CARD-OWNER")
+                .build());
+
+        assertThatThrownBy(() -> provider.authenticate(token("sarah1", "abc123")))
+                .isInstanceOf(BadCredentialsException.class);
+        assertThat(provider.authenticate(token("sarah1", "new-secret")).isAuthenticated()).isTrue();
+    }
+
+    @Test
+    void shouldRejectARemovedUser() {
+        provider.authenticate(token("sarah1", "abc123"));
+
+        users.deleteUser("sarah1");
+
+        assertThatThrownBy(() -> provider.authenticate(token("sarah1", "abc123")))
+                .isInstanceOf(BadCredentialsException.class);
+    }
+
+    @Test
+    void shouldEvictAllEntriesForAUser() {
+        provider.authenticate(token("sarah1", "abc123"));
+        assertThat(provider.size()).isEqualTo(1);
+
+        provider.evict("sarah1");
+
+        assertThat(provider.size()).isZero();
+    }
+
+    private static UsernamePasswordAuthenticationToken token(String username, String password) {
+        return UsernamePasswordAuthenticationToken.unauthenticated(username, password);
+    }
+}
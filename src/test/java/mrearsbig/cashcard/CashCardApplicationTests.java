@@ -1,6 +1,9 @@
 package mrearsbig.cashcard;
 
+import java.math.BigDecimal;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -8,8 +11,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
 import com.jayway.jsonpath.DocumentContext;
@@ -70,7 +75,7 @@ class CashCardApplicationTests {
 	 */
 	@DirtiesContext
 	void shouldCreateANewCashCard() {
-		CashCard newCashCard = new CashCard(null, 200.00, null);
+		CashCard newCashCard = new CashCard(null, new BigDecimal("200.00"), null);
 		ResponseEntity<Void> createResponse = testRestTemplate
 				.withBasicAuth("sarah1", "abc123")
 				.postForEntity("/cashcards", newCashCard, Void.class);
@@ -195,7 +200,7 @@ class CashCardApplicationTests {
 	@Test
 	@DirtiesContext
 	void shouldUpdateAnExistingCashCard() {
-		CashCard cashCardUpdate = new CashCard(null, 19.99, null);
+		CashCard cashCardUpdate = new CashCard(null, new BigDecimal("19.99"), null);
 		HttpEntity<CashCard> requestEntity = new HttpEntity<>(cashCardUpdate);
 		ResponseEntity<Void> response = testRestTemplate
 				.withBasicAuth("sarah1", "abc123")
@@ -215,7 +220,7 @@ class CashCardApplicationTests {
 
 	@Test
 	void shouldNotUpdateACashCardThatDoesNotExist() {
-		CashCard unknownCard = new CashCard(null, 19.99, null);
+		CashCard unknownCard = new CashCard(null, new BigDecimal("19.99"), null);
 		HttpEntity<CashCard> requestEntity = new HttpEntity<>(unknownCard);
 		ResponseEntity<Void> response = testRestTemplate
 				.withBasicAuth("sarah1", "abc123")
@@ -225,7 +230,7 @@ class CashCardApplicationTests {
 
 	@Test
 	void shouldNotUpdateACashCardThatIsOwnedBySomeoneElse() {
-		CashCard kumarsCard = new CashCard(null, 333.33, null);
+		CashCard kumarsCard = new CashCard(null, new BigDecimal("333.33"), null);
 		HttpEntity<CashCard> requestEntity = new HttpEntity<>(kumarsCard);
 		ResponseEntity<Void> response = testRestTemplate
 				.withBasicAuth("sarah1", "abc123")
@@ -267,4 +272,256 @@ class CashCardApplicationTests {
 				.getForEntity("/cashcards/102", String.class);
 		Assertions.assertThat(getResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
 	}
+
+	@Test
+	@DirtiesContext
+	void shouldCreateABatchOfCashCards() {
+		List<CashCard> newCashCards = List.of(
+				new CashCard(null, new BigDecimal("10.00"), null),
+				new CashCard(null, new BigDecimal("20.00"), null));
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards/batch", newCashCards, String.class);
+		Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		JSONArray statuses = documentContext.read("$..status", JSONArray.class);
+		Assertions.assertThat(statuses).containsExactly(201, 201);
+
+		Number id = documentContext.read("$[1].id", Number.class);
+		ResponseEntity<String> getResponse = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/" + id, String.class);
+		Assertions.assertThat(getResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+		Double amount = JsonPath.parse(getResponse.getBody()).read("$.amount", Double.class);
+		Assertions.assertThat(amount).isEqualTo(20.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldUpdateABatchOfCashCardsAndReportCardsThatAreNotOwned() {
+		List<CashCard> cashCardUpdates = List.of(
+				new CashCard(99L, new BigDecimal("19.99"), null),
+				new CashCard(102L, new BigDecimal("333.33"), null),
+				new CashCard(99999L, new BigDecimal("1.00"), null));
+		HttpEntity<List<CashCard>> requestEntity = new HttpEntity<>(cashCardUpdates);
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/batch", HttpMethod.PUT, requestEntity, String.class);
+		Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		JSONArray statuses = JsonPath.parse(response.getBody()).read("$..status", JSONArray.class);
+		Assertions.assertThat(statuses).containsExactly(204, 404, 404);
+
+		ResponseEntity<String> sarahsCard = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		Assertions.assertThat(JsonPath.parse(sarahsCard.getBody()).read("$.amount", Double.class)).isEqualTo(19.99);
+
+		ResponseEntity<String> kumarsCard = testRestTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.getForEntity("/cashcards/102", String.class);
+		Assertions.assertThat(JsonPath.parse(kumarsCard.getBody()).read("$.amount", Double.class)).isEqualTo(200.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldDeleteABatchOfCashCardsAndReportCardsThatAreNotOwned() {
+		HttpEntity<List<Long>> requestEntity = new HttpEntity<>(List.of(99L, 100L, 102L));
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/batch", HttpMethod.DELETE, requestEntity, String.class);
+		Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		JSONArray statuses = JsonPath.parse(response.getBody()).read("$..status", JSONArray.class);
+		Assertions.assertThat(statuses).containsExactly(204, 204, 404);
+
+		ResponseEntity<String> getResponse = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards", String.class);
+		int cashCardCount = JsonPath.parse(getResponse.getBody()).read("$.length()", Integer.class);
+		Assertions.assertThat(cashCardCount).isEqualTo(1);
+
+		ResponseEntity<String> kumarsCard = testRestTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.getForEntity("/cashcards/102", String.class);
+		Assertions.assertThat(kumarsCard.getStatusCode()).isEqualTo(HttpStatus.OK);
+	}
+
+	@Test
+	void shouldExportAllCashCardsAsNewlineDelimitedJson() {
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/export", String.class);
+		Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		Assertions.assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaType.APPLICATION_NDJSON))
+				.isTrue();
+
+		List<String> lines = response.getBody().lines().toList();
+		Assertions.assertThat(lines).hasSize(3);
+
+		List<Number> ids = lines.stream().map(line -> JsonPath.parse(line).read("$.id", Number.class)).toList();
+		Assertions.assertThat(ids).containsExactly(99, 100, 101);
+
+		List<String> owners = lines.stream().map(line -> JsonPath.parse(line).read("$.owner", String.class)).toList();
+		Assertions.assertThat(owners).containsOnly("sarah1");
+	}
+
+	@Test
+	void shouldPageThroughCashCardsWithACursor() {
+		List<Double> amounts = new ArrayList<>();
+		String after = "";
+		for (int page = 0; page < 3; page++) {
+			ResponseEntity<String> response = testRestTemplate
+					.withBasicAuth("sarah1", "abc123")
+					.getForEntity("/cashcards?size=1&after={after}", String.class, after);
+			Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+			amounts.add(JsonPath.parse(response.getBody()).read("$[0].amount", Double.class));
+			after = response.getHeaders().getFirst("Next-Cursor");
+		}
+
+		Assertions.assertThat(amounts).containsExactly(1.00, 123.45, 150.00);
+		Assertions.assertThat(after).isNull();
+	}
+
+	@Test
+	void shouldPageThroughCashCardsWithACursorSortedById() {
+		ResponseEntity<String> firstPage = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards?size=2&sort=id,desc&after=", String.class);
+		Assertions.assertThat(firstPage.getStatusCode()).isEqualTo(HttpStatus.OK);
+		JSONArray firstIds = JsonPath.parse(firstPage.getBody()).read("$..id", JSONArray.class);
+		Assertions.assertThat(firstIds).containsExactly(101, 100);
+
+		String after = firstPage.getHeaders().getFirst("Next-Cursor");
+		ResponseEntity<String> secondPage = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards?size=2&sort=id,desc&after={after}", String.class, after);
+		JSONArray secondIds = JsonPath.parse(secondPage.getBody()).read("$..id", JSONArray.class);
+		Assertions.assertThat(secondIds).containsExactly(99);
+		Assertions.assertThat(secondPage.getHeaders().getFirst("Next-Cursor")).isNull();
+	}
+
+	@Test
+	void shouldRejectAMalformedCursor() {
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards?after=not-a-cursor", String.class);
+		Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	void shouldAnswerAConditionalGetWithNotModified() {
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		String eTag = response.getHeaders().getETag();
+		Assertions.assertThat(eTag).isNotBlank();
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		ResponseEntity<String> conditionalResponse = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		Assertions.assertThat(conditionalResponse.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		Assertions.assertThat(conditionalResponse.getBody()).isNull();
+	}
+
+	@Test
+	void shouldAnswerAConditionalListRequestWithNotModified() {
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards", String.class);
+		String eTag = response.getHeaders().getETag();
+		Assertions.assertThat(eTag).isNotBlank();
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		ResponseEntity<String> conditionalResponse = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		Assertions.assertThat(conditionalResponse.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldUpdateACashCardWhenIfMatchIsCurrentAndRejectAStaleOne() {
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		String eTag = response.getHeaders().getETag();
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfMatch(eTag);
+		ResponseEntity<Void> firstUpdate = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT,
+						new HttpEntity<>(new CashCard(null, new BigDecimal("19.99"), null), headers), Void.class);
+		Assertions.assertThat(firstUpdate.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+		Assertions.assertThat(firstUpdate.getHeaders().getETag()).isNotEqualTo(eTag);
+
+		ResponseEntity<Void> staleUpdate = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT,
+						new HttpEntity<>(new CashCard(null, new BigDecimal("42.00"), null), headers), Void.class);
+		Assertions.assertThat(staleUpdate.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+		ResponseEntity<String> getResponse = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		Assertions.assertThat(JsonPath.parse(getResponse.getBody()).read("$.amount", Double.class)).isEqualTo(19.99);
+		Assertions.assertThat(getResponse.getHeaders().getETag()).isEqualTo(firstUpdate.getHeaders().getETag());
+	}
+
+	@Test
+	void shouldNotUpdateWithIfMatchACashCardOwnedBySomeoneElse() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfMatch("\"0\"");
+		ResponseEntity<Void> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/102", HttpMethod.PUT,
+						new HttpEntity<>(new CashCard(null, new BigDecimal("333.33"), null), headers), Void.class);
+		Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	void shouldReturnTheOwnersSummary() {
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/summary", String.class);
+		Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		Assertions.assertThat(documentContext.read("$.owner", String.class)).isEqualTo("sarah1");
+		Assertions.assertThat(documentContext.read("$.cardCount", Integer.class)).isEqualTo(3);
+		Assertions.assertThat(documentContext.read("$.totalAmount", Double.class)).isEqualTo(274.45);
+		Assertions.assertThat(documentContext.read("$.minAmount", Double.class)).isEqualTo(1.00);
+		Assertions.assertThat(documentContext.read("$.maxAmount", Double.class)).isEqualTo(150.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldKeepTheSummaryCurrentAcrossWrites() {
+		testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.postForEntity("/cashcards", new CashCard(null, new BigDecimal("500.00"), null), Void.class);
+		// Deleting the cheapest card and lowering another moves both extremes.
+		testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/100", HttpMethod.DELETE, null, Void.class);
+		testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.exchange("/cashcards/101", HttpMethod.PUT,
+						new HttpEntity<>(new CashCard(null, new BigDecimal("5.00"), null)), Void.class);
+
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards/summary", String.class);
+
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		Assertions.assertThat(documentContext.read("$.cardCount", Integer.class)).isEqualTo(3);
+		Assertions.assertThat(documentContext.read("$.totalAmount", Double.class)).isEqualTo(628.45);
+		Assertions.assertThat(documentContext.read("$.minAmount", Double.class)).isEqualTo(5.00);
+		Assertions.assertThat(documentContext.read("$.maxAmount", Double.class)).isEqualTo(500.00);
+	}
 }
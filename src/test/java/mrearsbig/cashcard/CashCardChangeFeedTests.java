@@ -0,0 +1,245 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CashCardChangeFeedTests {
+
+    @Autowired
+    TestRestTemplate testRestTemplate;
+
+    @Autowired
+    CashCardChangeCompactor compactor;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @LocalServerPort
+    int port;
+
+    @Test
+    void shouldReturnTheChangesSinceTheLastSync() {
+        long since = lastSequence();
+
+        testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForEntity("/cashcards", new CashCard(null, new BigDecimal("250.00"), null), Void.class);
+        testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT,
+                        new HttpEntity<>(new CashCard(null, new BigDecimal("19.99"), null)), Void.class);
+        testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/100", HttpMethod.DELETE, null, Void.class);
+        // Another owner's writes never show up in this feed.
+        testRestTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .exchange("/cashcards/102", HttpMethod.DELETE, null, Void.class);
+
+        ResponseEntity<String> response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/changes?since=" + since, String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        DocumentContext documentContext = JsonPath.parse(response.getBody());
+        List<String> types = documentContext.read("$.changes[*].type");
+        assertThat(types).containsExactly("CREATE", "UPDATE", "DELETE");
+        List<Number> sequences = documentContext.read("$.changes[*].sequence");
+        assertThat(sequences).extracting(Number::longValue).containsExactly(since + 1, since + 2, since + 3);
+        assertThat(documentContext.read("$.changes[1].id", Long.class)).isEqualTo(99);
+        assertThat(documentContext.read("$.changes[1].amount", Double.class)).isEqualTo(19.99);
+        assertThat(documentContext.read("$.changes[2].id", Long.class)).isEqualTo(100);
+        assertThat(documentContext.read("$.lastSequence", Long.class)).isEqualTo(since + 3);
+
+        // A limit splits the feed into pages that continue from each other.
+        ResponseEntity<String> page = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/changes?since=" + (since + 1) + "&limit=1", String.class);
+        List<Number> pageSequences = JsonPath.parse(page.getBody()).read("$.changes[*].sequence");
+        assertThat(pageSequences).extracting(Number::longValue).containsExactly(since + 2);
+    }
+
+    @Test
+    void shouldAnswerGoneWhenTheChangesSinceTheLastSyncWereCompacted() {
+        long since = lastSequence();
+        testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT,
+                        new HttpEntity<>(new CashCard(null, new BigDecimal("19.99"), null)), Void.class);
+
+        assertThat(compactor.compact(Instant.now().plusSeconds(60))).isPositive();
+
+        ResponseEntity<String> behind = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/changes?since=" + since, String.class);
+        assertThat(behind.getStatusCode()).isEqualTo(HttpStatus.GONE);
+
+        // A client that is already up to date loses nothing, and the numbering
+        // carries on after compaction.
+        ResponseEntity<String> current = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/changes?since=" + (since + 1), String.class);
+        assertThat(current.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(JsonPath.parse(current.getBody()).read("$.changes.length()", Integer.class)).isZero();
+        assertThat(lastSequence()).isEqualTo(since + 1);
+
+        ResponseEntity<String> ahead = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/changes?since=" + (since + 100), String.class);
+        assertThat(ahead.getStatusCode()).isEqualTo(HttpStatus.GONE);
+    }
+
+    @Test
+    void shouldNotCompactAChangeAwayWhileKeepingAnEarlierOne() throws Exception {
+        long since = lastSequence();
+        // H2 stamps changed_at with the start of the transaction but hands out the
+        // sequence number when the change is written, so the transaction that
+        // started first can end up with the later number and the older timestamp.
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        try (Connection earlier = dataSource.getConnection(); Connection later = dataSource.getConnection()) {
+            earlier.setAutoCommit(false);
+            later.setAutoCommit(false);
+            try (Statement statement = earlier.createStatement()) {
+                statement.executeQuery("SELECT CURRENT_TIMESTAMP").close();
+            }
+            Thread.sleep(50);
+            try (Statement statement = later.createStatement()) {
+                statement.executeUpdate("UPDATE cash_card SET amount = 1.00 WHERE id = 99");
+            }
+            later.commit();
+            try (Statement statement = earlier.createStatement()) {
+                statement.executeUpdate("UPDATE cash_card SET amount = 2.00 WHERE id = 100");
+            }
+            earlier.commit();
+        }
+        testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/101", HttpMethod.PUT,
+                        new HttpEntity<>(new CashCard(null, new BigDecimal("3.00"), null)), Void.class);
+
+        Instant first = changedAt(since + 1);
+        assertThat(changedAt(since + 2)).isBefore(first);
+
+        // The cutoff falls between the two timestamps: the entry stamped first
+        // expires, and so does every entry before it in the sequence.
+        assertThat(compactor.compact(first)).isPositive();
+        assertThat(jdbcTemplate.queryForList("SELECT sequence FROM cash_card_change WHERE owner = 'sarah1'",
+                Long.class)).containsExactly(since + 3);
+
+        ResponseEntity<String> behind = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/changes?since=" + since, String.class);
+        assertThat(behind.getStatusCode()).isEqualTo(HttpStatus.GONE);
+
+        // A page with a hole in the middle also asks the client to resync.
+        CashCardChanges gap = new CashCardChanges(List.of(change(since + 1), change(since + 3)), since + 3);
+        assertThat(gap.continueFrom(since)).isFalse();
+        assertThat(gap.continueFrom(since + 2)).isFalse();
+    }
+
+    @Test
+    void shouldHoldALongPollUntilAChangeArrives() {
+        long since = lastSequence();
+        Instant start = Instant.now();
+        CompletableFuture<ResponseEntity<String>> poll = CompletableFuture.supplyAsync(() -> testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/changes?since=" + since + "&wait=20", String.class));
+
+        testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForEntity("/cashcards/101/credit", new CashCard(null, new BigDecimal("5.00"), null), Void.class);
+
+        ResponseEntity<String> response = poll.join();
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        DocumentContext documentContext = JsonPath.parse(response.getBody());
+        assertThat(documentContext.read("$.changes[0].type", String.class)).isEqualTo("UPDATE");
+        assertThat(documentContext.read("$.changes[0].amount", Double.class)).isEqualTo(155.00);
+        assertThat(Duration.between(start, Instant.now())).isLessThan(Duration.ofSeconds(20));
+    }
+
+    @Test
+    void shouldStreamChangesAsServerSentEvents() throws IOException, InterruptedException {
+        long since = lastSequence();
+        String credentials = Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/cashcards/changes"))
+                .header("Accept", "text/event-stream")
+                .header("Authorization", "Basic " + credentials)
+                .build();
+
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+            assertThat(response.statusCode()).isEqualTo(200);
+
+            testRestTemplate
+                    .withBasicAuth("sarah1", "abc123")
+                    .exchange("/cashcards/101", HttpMethod.DELETE, null, Void.class);
+
+            Iterator<String> lines = response.body().iterator();
+            String id = null;
+            String data = null;
+            while (data == null && lines.hasNext()) {
+                String line = lines.next();
+                if (line.startsWith("id:")) {
+                    id = line.substring(3).strip();
+                } else if (line.startsWith("data:")) {
+                    data = line.substring(5).strip();
+                }
+            }
+            assertThat(id).isEqualTo(Long.toString(since + 1));
+            assertThat(JsonPath.parse(data).read("$.type", String.class)).isEqualTo("DELETE");
+            assertThat(JsonPath.parse(data).read("$.id", Long.class)).isEqualTo(101);
+            response.body().close();
+        }
+    }
+
+    private Instant changedAt(long sequence) {
+        return jdbcTemplate.queryForObject(
+                "SELECT changed_at FROM cash_card_change WHERE owner = 'sarah1' AND sequence = ?",
+                OffsetDateTime.class, sequence).toInstant();
+    }
+
+    private static CashCardChange change(long sequence) {
+        return new CashCardChange(sequence, CashCardChange.Type.UPDATE, 99L, BigDecimal.ONE, 1L, Instant.now());
+    }
+
+    private long lastSequence() {
+        ResponseEntity<String> response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/changes", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        return JsonPath.parse(response.getBody()).read("$.lastSequence", Long.class);
+    }
+}
@@ -0,0 +1,164 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class CashCardConcurrencyTests {
+    private static final int UPDATES = 200;
+    private static final int READERS = 4;
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 50;
+
+    @Autowired
+    TestRestTemplate testRestTemplate;
+
+    @Autowired
+    CashCardCache cashCardCache;
+
+    @Test
+    @DirtiesContext
+    void shouldNeverServeAStaleAmountWhileReadsAndUpdatesRunTogether() throws Exception {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        try {
+            // The writer only ever increases the amount, so a reader that sees the
+            // amount go down has been served a stale cache entry.
+            List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < READERS; i++) {
+                readers.add(executor.submit(() -> {
+                    double lastSeen = 0;
+                    while (writing.get()) {
+                        double amount = readAmount();
+                        assertThat(amount).isGreaterThanOrEqualTo(lastSeen);
+                        lastSeen = amount;
+                    }
+                    return null;
+                }));
+            }
+
+            for (int i = 1; i <= UPDATES; i++) {
+                BigDecimal amount = BigDecimal.valueOf(1000 + i);
+                ResponseEntity<Void> response = testRestTemplate
+                        .withBasicAuth("sarah1", "abc123")
+                        .exchange("/cashcards/99", HttpMethod.PUT,
+                                new HttpEntity<>(new CashCard(null, amount, null)), Void.class);
+                assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+                assertThat(readAmount()).isEqualTo(amount.doubleValue());
+            }
+
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            writing.set(false);
+            executor.shutdownNow();
+        }
+
+        assertThat(cashCardCache.stats().hitCount()).isPositive();
+    }
+
+    @Test
+    @DirtiesContext
+    void shouldNotLoseCreditsOrDebitsUnderHighContention() throws Exception {
+        // Card 99 starts at 123.45. Every thread credits 1.00 and debits 0.50 per
+        // round, all against the same row.
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            tasks.add(() -> {
+                for (int round = 0; round < ROUNDS; round++) {
+                    assertThat(post("/cashcards/99/credit", "1.00")).isEqualTo(HttpStatus.NO_CONTENT);
+                    assertThat(post("/cashcards/99/debit", "0.50")).isEqualTo(HttpStatus.NO_CONTENT);
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        BigDecimal expected = new BigDecimal("123.45")
+                .add(new BigDecimal("0.50").multiply(BigDecimal.valueOf(THREADS * ROUNDS)));
+        assertThat(readAmount()).isEqualTo(expected.doubleValue());
+    }
+
+    @Test
+    @DirtiesContext
+    void shouldNeverDebitBelowZeroUnderHighContention() throws Exception {
+        // Card 100 starts at 1.00, so exactly ten debits of 0.10 can succeed.
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            tasks.add(() -> {
+                for (int round = 0; round < 5; round++) {
+                    HttpStatusCode status = post("/cashcards/100/debit", "0.10");
+                    if (status.equals(HttpStatus.NO_CONTENT)) {
+                        succeeded.incrementAndGet();
+                    } else {
+                        assertThat(status).isEqualTo(HttpStatus.CONFLICT);
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        assertThat(succeeded.get()).isEqualTo(10);
+        assertThat(rejected.get()).isEqualTo(THREADS * 5 - 10);
+        ResponseEntity<String> response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/100", String.class);
+        assertThat(JsonPath.parse(response.getBody()).read("$.amount", Double.class)).isEqualTo(0.00);
+    }
+
+    private HttpStatusCode post(String path, String amount) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForEntity(path, new HttpEntity<>("{\"amount\": " + amount + "}", headers), Void.class)
+                .getStatusCode();
+    }
+
+    private static void runAll(List<Callable<Void>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private double readAmount() {
+        ResponseEntity<String> response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        return JsonPath.parse(response.getBody()).read("$.amount", Double.class);
+    }
+}
@@ -0,0 +1,89 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.JsonTest;
+import org.springframework.boot.test.json.BasicJsonTester;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@JsonTest
+class CashCardHttpMessageConverterTest {
+    private static final Type CASH_CARD_LIST = new ParameterizedTypeReference<List<CashCard>>() {
+    }.getType();
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final CashCardHttpMessageConverter converter = new CashCardHttpMessageConverter();
+    private final BasicJsonTester json = new BasicJsonTester(getClass());
+
+    private final List<CashCard> cashCards = List.of(
+            new CashCard(99L, new BigDecimal("123.45"), "sarah1"),
+            new CashCard(100L, new BigDecimal("1.00"), "sarah1"),
+            new CashCard(101L, new BigDecimal("150.00"), "sarah1"));
+
+    @Test
+    void shouldWriteASingleCashCardLikeJackson() throws IOException {
+        byte[] written = write(cashCards.get(0), CashCard.class);
+
+        assertThat(written).isEqualTo(objectMapper.writeValueAsBytes(cashCards.get(0)));
+        assertThat(json.from(written)).isStrictlyEqualToJson("single.json");
+    }
+
+    @Test
+    void shouldWriteACashCardListLikeJackson() throws IOException {
+        byte[] written = write(cashCards, CASH_CARD_LIST);
+
+        assertThat(written).isEqualTo(objectMapper.writeValueAsBytes(cashCards));
+        assertThat(json.from(written)).isStrictlyEqualToJson("list.json");
+    }
+
+    @Test
+    void shouldWriteEdgeCasesLikeJackson() throws IOException {
+        List<CashCard> edgeCases = List.of(
+                new CashCard(null, null, null),
+                new CashCard(0L, new BigDecimal("0.00"), ""),
+                new CashCard(Long.MAX_VALUE, new BigDecimal("-0.05"), "quote\" backslash\\ slash/"),
+                new CashCard(1L, new BigDecimal("-1234567.89"), "tab\t newline\n bell\u0007 del\u007f"),
+                new CashCard(2L, new BigDecimal("12345678901234567890.12"), "ñandú €uro 💳"),
+                new CashCard(3L, new BigDecimal("9999999999999999.99"), "kumar2"));
+
+        assertThat(write(edgeCases, CASH_CARD_LIST)).isEqualTo(objectMapper.writeValueAsBytes(edgeCases));
+    }
+
+    @Test
+    void shouldWriteListsLargerThanTheBuffer() throws IOException {
+        List<CashCard> page = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            page.add(new CashCard(id, BigDecimal.valueOf(id * 7919, 2), "owner-" + id));
+        }
+
+        assertThat(write(page, CASH_CARD_LIST)).isEqualTo(objectMapper.writeValueAsBytes(page));
+    }
+
+    @Test
+    void shouldOnlyWriteCashCardsAndLeaveReadingToJackson() {
+        assertThat(converter.canWrite(CashCard.class, CashCard.class, MediaType.APPLICATION_JSON)).isTrue();
+        assertThat(converter.canWrite(CASH_CARD_LIST, List.class, MediaType.APPLICATION_JSON)).isTrue();
+        assertThat(converter.canWrite(new ParameterizedTypeReference<List<CashCardBatchResult>>() {
+        }.getType(), List.class, MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(converter.canWrite(CashCard.class, CashCard.class, MediaType.APPLICATION_XML)).isFalse();
+        assertThat(converter.canRead(CashCard.class, CashCard.class, MediaType.APPLICATION_JSON)).isFalse();
+    }
+
+    private byte[] write(Object body, Type type) throws IOException {
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+        converter.write(body, type, MediaType.APPLICATION_JSON, outputMessage);
+        return outputMessage.getBodyAsBytes();
+    }
+}
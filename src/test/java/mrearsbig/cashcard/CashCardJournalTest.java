@@ -0,0 +1,113 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CashCardJournalTest {
+    private static final int CAPACITY = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReplayDurableEntriesThatWereNeverApplied() throws Exception {
+        Path file = directory.resolve("cashcards.journal");
+        try (CashCardJournal journal = new CashCardJournal(file, CAPACITY)) {
+            journal.append(CashCardJournal.CREATE, 1000L, 12345L, "sarah1");
+            long last = journal.append(CashCardJournal.UPDATE, 1000L, 100L, "sarah1");
+            journal.awaitDurable(last);
+            assertThat(journal.durableUnapplied(10)).hasSize(2);
+        }
+
+        try (CashCardJournal journal = new CashCardJournal(file, CAPACITY)) {
+            assertThat(journal.unapplied()).containsExactly(
+                    new CashCardJournal.Entry(1, CashCardJournal.CREATE, 1000L, 12345L, "sarah1"),
+                    new CashCardJournal.Entry(2, CashCardJournal.UPDATE, 1000L, 100L, "sarah1"));
+            assertThat(journal.lastSequence()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void shouldForgetEntriesUpToTheCheckpoint() throws Exception {
+        Path file = directory.resolve("cashcards.journal");
+        try (CashCardJournal journal = new CashCardJournal(file, CAPACITY)) {
+            long first = journal.append(CashCardJournal.CREATE, 1000L, 100L, "sarah1");
+            long second = journal.append(CashCardJournal.DELETE, 1000L, 0L, "sarah1");
+            journal.awaitDurable(second);
+            journal.checkpoint(first);
+            assertThat(journal.durableUnapplied(10)).extracting(CashCardJournal.Entry::sequence)
+                    .containsExactly(second);
+        }
+
+        try (CashCardJournal journal = new CashCardJournal(file, CAPACITY)) {
+            assertThat(journal.unapplied()).extracting(CashCardJournal.Entry::sequence).containsExactly(2L);
+            journal.checkpoint(2);
+        }
+
+        // Once everything is applied, sequences keep counting up from the checkpoint.
+        try (CashCardJournal journal = new CashCardJournal(file, CAPACITY)) {
+            assertThat(journal.unapplied()).isEmpty();
+            assertThat(journal.append(CashCardJournal.CREATE, 1001L, 100L, "sarah1")).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void shouldStopReplayAtATornEntry() throws Exception {
+        Path file = directory.resolve("cashcards.journal");
+        try (CashCardJournal journal = new CashCardJournal(file, CAPACITY)) {
+            journal.append(CashCardJournal.CREATE, 1000L, 100L, "sarah1");
+            long last = journal.append(CashCardJournal.CREATE, 1001L, 200L, "sarah1");
+            journal.awaitDurable(last);
+        }
+
+        // Flip a byte in the owner of the second entry, as a write cut short would.
+        long secondEntryOwner = 64 + 35 + "sarah1".length() + 31;
+        corrupt(file, secondEntryOwner);
+
+        try (CashCardJournal journal = new CashCardJournal(file, CAPACITY)) {
+            List<CashCardJournal.Entry> unapplied = journal.unapplied();
+            assertThat(unapplied).extracting(CashCardJournal.Entry::id).containsExactly(1000L);
+            assertThat(journal.append(CashCardJournal.CREATE, 1002L, 300L, "sarah1")).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void shouldMakeEveryWaitingAppendDurableTogether() throws Exception {
+        try (CashCardJournal journal = new CashCardJournal(directory.resolve("cashcards.journal"), CAPACITY)) {
+            Thread[] writers = new Thread[8];
+            for (int i = 0; i < writers.length; i++) {
+                long id = 1000L + i;
+                writers[i] = Thread.ofPlatform().start(() -> {
+                    try {
+                        journal.awaitDurable(journal.append(CashCardJournal.CREATE, id, 100L, "sarah1"));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+
+            assertThat(journal.durableUnapplied(100)).hasSize(writers.length);
+        }
+    }
+
+    private static void corrupt(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            value.flip();
+            value.put(0, (byte) (value.get(0) ^ 0x5A));
+            channel.write(value, position);
+        }
+    }
+}
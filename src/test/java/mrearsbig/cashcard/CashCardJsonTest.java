@@ -10,6 +10,7 @@ import org.springframework.boot.test.json.JacksonTester;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.IOException;
+import java.math.BigDecimal;
 
 @JsonTest
 public class CashCardJsonTest {
@@ -25,9 +26,9 @@ public class CashCardJsonTest {
     @BeforeEach
     void setUp() {
         cashCards = Arrays.array(
-                new CashCard(99L, 123.45, "sarah1"),
-                new CashCard(100L, 1.00, "sarah1"),
-                new CashCard(101L, 150.00, "sarah1"));
+                new CashCard(99L, new BigDecimal("123.45"), "sarah1"),
+                new CashCard(100L, new BigDecimal("1.00"), "sarah1"),
+                new CashCard(101L, new BigDecimal("150.00"), "sarah1"));
     }
 
     @Test
@@ -55,9 +56,9 @@ public class CashCardJsonTest {
                 }
                 """;
 
-        assertThat(json.parse(expected)).isEqualTo(new CashCard(99L, 123.45, "sarah1"));
+        assertThat(json.parse(expected)).isEqualTo(new CashCard(99L, new BigDecimal("123.45"), "sarah1"));
         assertThat(json.parseObject(expected).id()).isEqualTo(99);
-        assertThat(json.parseObject(expected).amount()).isEqualTo(123.45);
+        assertThat(json.parseObject(expected).amount()).isEqualTo(new BigDecimal("123.45"));
     }
 
     @Test
@@ -0,0 +1,230 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.data.jdbc.DataJdbcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+/**
+ * Fails when a statement issued by {@link CashCardRepository} stops using an
+ * index on a table large enough for a table scan to matter. Each repository
+ * method is called for real through a DataSource that records the SQL and the
+ * parameters of every prepared statement, and the recorded statements are
+ * explained, so the plans are those of the SQL Spring Data JDBC generates.
+ */
+@DataJdbcTest
+@DirtiesContext
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CashCardQueryPlanTest {
+    private static final int ROWS = 1_000_000;
+    private static final int OWNERS = 1_000;
+    private static final String OWNER = "owner-42";
+    private static final List<RecordedStatement> RECORDED = new ArrayList<>();
+    private static volatile boolean recording;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    CashCardRepository cashCardRepository;
+
+    /** A prepared statement as executed: its SQL and the setter calls that bound its parameters. */
+    record RecordedStatement(String sql, List<ParameterSetter> parameters) {
+    }
+
+    record ParameterSetter(Method method, Object[] arguments) {
+    }
+
+    @BeforeAll
+    void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO cash_card (amount, owner)
+                SELECT MOD(X * 7919, 100000) / 100.0, 'owner-' || MOD(X, %d)
+                FROM SYSTEM_RANGE(1, %d)""".formatted(OWNERS, ROWS));
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    static Map<String, Consumer<CashCardRepository>> repositoryCalls() {
+        // Card 42 belongs to owner-42, like every card n to owner-(n mod OWNERS).
+        Sort.Order byAmount = Sort.Order.asc("amount");
+        Sort.Order byIdDescending = Sort.Order.desc("id");
+        Map<String, Consumer<CashCardRepository>> calls = new TreeMap<>();
+        calls.put("findByIdAndOwner", repository -> repository.findByIdAndOwner(42L, OWNER));
+        calls.put("findByOwner", repository -> repository.findByOwner(OWNER,
+                PageRequest.of(2, 20, Sort.by(byAmount))));
+        calls.put("existsByIdAndOwner", repository -> repository.existsByIdAndOwner(42L, OWNER));
+        calls.put("updateAmountByIdAndOwner", repository -> repository.updateAmountByIdAndOwner(42L, OWNER,
+                new BigDecimal("1.00")));
+        calls.put("updateAmountByIdAndOwnerAndVersion", repository -> repository
+                .updateAmountByIdAndOwnerAndVersion(42L, OWNER, new BigDecimal("1.00"), 0L));
+        calls.put("creditByIdAndOwner", repository -> repository.creditByIdAndOwner(42L, OWNER,
+                new BigDecimal("1.00")));
+        calls.put("debitByIdAndOwner", repository -> repository.debitByIdAndOwner(42L, OWNER,
+                new BigDecimal("1.00")));
+        calls.put("deleteByIdAndOwner", repository -> repository.deleteByIdAndOwner(42L, OWNER));
+        calls.put("updateAmountsByOwner", repository -> repository.updateAmountsByOwner(
+                List.of(new CashCard(42L, new BigDecimal("1.00"), OWNER)), OWNER));
+        calls.put("deleteAllByIdsAndOwner", repository -> repository.deleteAllByIdsAndOwner(List.of(42L), OWNER));
+        calls.put("streamByOwner", repository -> repository.streamByOwner(OWNER, cashCard -> {
+        }));
+        calls.put("findByOwnerAfter", repository -> {
+            repository.findByOwnerAfter(OWNER, byAmount, null, 20);
+            repository.findByOwnerAfter(OWNER, byAmount, new CashCardCursor(byAmount, new BigDecimal("500.00"), 42L),
+                    20);
+            repository.findByOwnerAfter(OWNER, byIdDescending, new CashCardCursor(byIdDescending, null, 500_000L),
+                    20);
+        });
+        calls.put("findSummaryByOwner", repository -> repository.findSummaryByOwner(OWNER));
+        return calls;
+    }
+
+    Stream<String> repositoryMethods() {
+        return repositoryCalls().keySet().stream();
+    }
+
+    @Test
+    void shouldCallEveryRepositoryMethod() {
+        // CRUD methods inherited from Spring Data look rows up by primary key; every
+        // method declared for this repository has to be called above.
+        Set<String> declared = Stream.of(CashCardRepository.class, CashCardJdbcOperations.class)
+                .flatMap(type -> Arrays.stream(type.getDeclaredMethods()))
+                .map(Method::getName)
+                .collect(Collectors.toSet());
+
+        assertThat(repositoryCalls().keySet()).containsExactlyInAnyOrderElementsOf(declared);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("repositoryMethods")
+    void shouldNotScanTheWholeTable(String method) {
+        List<RecordedStatement> statements = record(repositoryCalls().get(method));
+
+        assertThat(statements).as("statements of %s", method).isNotEmpty();
+        for (RecordedStatement statement : statements) {
+            assertThat(explain(statement)).as("query plan for %s: %s", method, statement.sql())
+                    .doesNotContainIgnoringCase("tableScan");
+        }
+    }
+
+    private List<RecordedStatement> record(Consumer<CashCardRepository> call) {
+        synchronized (RECORDED) {
+            RECORDED.clear();
+        }
+        recording = true;
+        try {
+            call.accept(cashCardRepository);
+        } finally {
+            recording = false;
+        }
+        synchronized (RECORDED) {
+            return List.copyOf(RECORDED);
+        }
+    }
+
+    private String explain(RecordedStatement statement) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + statement.sql())) {
+                for (ParameterSetter setter : statement.parameters()) {
+                    setter.method().invoke(explain, setter.arguments());
+                }
+                try (ResultSet resultSet = explain.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getString(1);
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot bind the parameters of " + statement.sql(), e);
+            }
+        });
+    }
+
+    @TestConfiguration
+    static class StatementRecordingConfig {
+
+        @Bean
+        static BeanPostProcessor statementRecordingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? recordStatements(dataSource) : bean;
+                }
+            };
+        }
+
+        private static DataSource recordStatements(DataSource dataSource) {
+            ProxyFactory proxyFactory = new ProxyFactory(dataSource);
+            proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+                Object result = invocation.proceed();
+                return result instanceof Connection connection ? recordStatements(connection) : result;
+            });
+            return (DataSource) proxyFactory.getProxy();
+        }
+
+        private static Connection recordStatements(Connection connection) {
+            ProxyFactory proxyFactory = new ProxyFactory(connection);
+            proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+                Object result = invocation.proceed();
+                String name = invocation.getMethod().getName();
+                if (result instanceof PreparedStatement statement
+                        && (name.equals("prepareStatement") || name.equals("prepareCall"))) {
+                    return recordStatement(statement, (String) invocation.getArguments()[0]);
+                }
+                return result;
+            });
+            return (Connection) proxyFactory.getProxy();
+        }
+
+        private static PreparedStatement recordStatement(PreparedStatement statement, String sql) {
+            List<ParameterSetter> parameters = new ArrayList<>();
+            boolean[] recorded = new boolean[1];
+            ProxyFactory proxyFactory = new ProxyFactory(statement);
+            proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+                String name = invocation.getMethod().getName();
+                Object[] arguments = invocation.getArguments();
+                // Parameter setters take the parameter index first; setFetchSize and
+                // the like take a single argument.
+                if (name.startsWith("set") && arguments.length >= 2 && arguments[0] instanceof Integer) {
+                    parameters.add(new ParameterSetter(invocation.getMethod(), arguments.clone()));
+                } else if (recording && !recorded[0]
+                        && (name.startsWith("execute") || name.equals("addBatch")) && arguments.length == 0) {
+                    // A batch is explained with the parameters of its first row.
+                    recorded[0] = true;
+                    synchronized (RECORDED) {
+                        RECORDED.add(new RecordedStatement(sql, List.copyOf(parameters)));
+                    }
+                }
+                return invocation.proceed();
+            });
+            return (PreparedStatement) proxyFactory.getProxy();
+        }
+    }
+}
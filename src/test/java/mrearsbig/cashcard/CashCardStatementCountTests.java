@@ -0,0 +1,131 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+
+/**
+ * Counts the JDBC statements each mutation prepares, so a lookup sneaking back
+ * in before an owner-scoped write is caught.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class CashCardStatementCountTests {
+    static final AtomicInteger STATEMENTS = new AtomicInteger();
+
+    @Autowired
+    TestRestTemplate testRestTemplate;
+
+    @Autowired
+    CashCardUserStore userStore;
+
+    @BeforeEach
+    void resetCount() throws InterruptedException {
+        // Authentication reads users from the same DataSource until the user
+        // index is loaded; only the statements of the request under test count.
+        userStore.awaitLoaded();
+        testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        STATEMENTS.set(0);
+    }
+
+    @Test
+    @DirtiesContext
+    void shouldUpdateAnOwnedCashCardWithOneStatement() {
+        ResponseEntity<Void> response = put("/cashcards/99", "sarah1", "abc123");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(STATEMENTS.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotUpdateACashCardOwnedBySomeoneElseWithOneStatement() {
+        ResponseEntity<Void> response = put("/cashcards/102", "sarah1", "abc123");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(STATEMENTS.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DirtiesContext
+    void shouldDeleteAnOwnedCashCardWithOneStatement() {
+        ResponseEntity<Void> response = delete("/cashcards/99", "sarah1", "abc123");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(STATEMENTS.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotDeleteAnUnknownCashCardWithOneStatement() {
+        ResponseEntity<Void> response = delete("/cashcards/99999", "sarah1", "abc123");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(STATEMENTS.get()).isEqualTo(1);
+    }
+
+    private ResponseEntity<Void> put(String path, String username, String password) {
+        return testRestTemplate
+                .withBasicAuth(username, password)
+                .exchange(path, HttpMethod.PUT,
+                        new HttpEntity<>(new CashCard(null, new BigDecimal("19.99"), null)), Void.class);
+    }
+
+    private ResponseEntity<Void> delete(String path, String username, String password) {
+        return testRestTemplate
+                .withBasicAuth(username, password)
+                .exchange(path, HttpMethod.DELETE, null, Void.class);
+    }
+
+    @TestConfiguration
+    static class StatementCountingConfig {
+
+        @Bean
+        static BeanPostProcessor statementCountingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? countStatements(dataSource) : bean;
+                }
+            };
+        }
+
+        private static DataSource countStatements(DataSource dataSource) {
+            ProxyFactory proxyFactory = new ProxyFactory(dataSource);
+            proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+                Object result = invocation.proceed();
+                return result instanceof Connection connection ? countStatements(connection) : result;
+            });
+            return (DataSource) proxyFactory.getProxy();
+        }
+
+        private static Connection countStatements(Connection connection) {
+            ProxyFactory proxyFactory = new ProxyFactory(connection);
+            proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+                String name = invocation.getMethod().getName();
+                if (name.equals("prepareStatement") || name.equals("prepareCall") || name.equals("createStatement")) {
+                    STATEMENTS.incrementAndGet();
+                }
+                return invocation.proceed();
+            });
+            return (Connection) proxyFactory.getProxy();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+@SpringBootTest(properties = "cashcard.summary.check.chunk-size=2")
+class CashCardSummaryCheckerTests {
+
+    @Autowired
+    CashCardSummaryChecker checker;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldFindNoDriftInSummariesMaintainedByTheTrigger() {
+        assertThat(checker.check()).isEmpty();
+    }
+
+    @Test
+    @DirtiesContext
+    void shouldReportAndRepairDriftedSummaries() {
+        jdbcTemplate.update("UPDATE cash_card_summary SET total_amount = 1.00 WHERE owner = 'sarah1'");
+        jdbcTemplate.update("DELETE FROM cash_card_summary WHERE owner = 'kumar2'");
+        jdbcTemplate.update("INSERT INTO cash_card_summary VALUES ('ghost', 1, 1.00, 1.00, 1.00)");
+
+        assertThat(checker.check()).extracting(CashCardSummaryDrift::owner)
+                .containsExactlyInAnyOrder("sarah1", "kumar2", "ghost");
+
+        assertThat(checker.repair()).hasSize(3);
+        assertThat(checker.check()).isEmpty();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT total_amount FROM cash_card_summary WHERE owner = 'sarah1'", BigDecimal.class))
+                .isEqualByComparingTo("274.45");
+    }
+}
@@ -0,0 +1,83 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.annotation.DirtiesContext;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "cashcard.users.batch-size=2", "cashcard.security.password-strength=11" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CashCardUserStoreTests {
+
+    @Autowired
+    CashCardUserStore userStore;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    TestRestTemplate testRestTemplate;
+
+    @Test
+    void shouldIndexEveryUserInBatches() throws InterruptedException {
+        jdbcTemplate.update("""
+                INSERT INTO cash_card_user (username, password, roles)
+                SELECT 'owner-' || X, '$2b$04$.gbzFA2M7qgYDBd6rJKixe3fgxgZ7zU4UjfAzfkk01ZjfVubud6Om', 'CARD-OWNER'
+                FROM SYSTEM_RANGE(1, 6)""");
+
+        UserDetails sarah = userStore.loadUserByUsername("sarah1");
+        userStore.awaitLoaded();
+
+        assertThat(userStore.size()).isEqualTo(9);
+        assertThat(sarah.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_CARD-OWNER");
+        assertThat(userStore.loadUserByUsername("owner-5").getAuthorities()).extracting(Object::toString)
+                .containsExactly("ROLE_CARD-OWNER");
+        assertThatThrownBy(() -> userStore.loadUserByUsername("nobody"))
+                .isInstanceOf(UsernameNotFoundException.class);
+    }
+
+    @Test
+    void shouldHandOutCopiesWhoseCredentialsCanBeErased() {
+        UserDetails sarah = userStore.loadUserByUsername("sarah1");
+        ((CredentialsContainer) sarah).eraseCredentials();
+
+        assertThat(sarah.getPassword()).isNull();
+        assertThat(userStore.loadUserByUsername("sarah1").getPassword()).startsWith("$2");
+    }
+
+    @Test
+    void shouldRehashAPasswordWithALowerStrengthOnLogin() {
+        String before = storedPassword("sarah1");
+        assertThat(before).startsWith("$2b$10$");
+
+        ResponseEntity<String> response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(storedPassword("sarah1")).startsWith("$2a$11$");
+        assertThat(userStore.loadUserByUsername("sarah1").getPassword()).isEqualTo(storedPassword("sarah1"));
+
+        // The new hash keeps matching, and other users are left alone.
+        response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(storedPassword("kumar2")).startsWith("$2b$10$");
+    }
+
+    private String storedPassword(String username) {
+        return jdbcTemplate.queryForObject("SELECT password FROM cash_card_user WHERE username = ?", String.class,
+                username);
+    }
+}
@@ -0,0 +1,53 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ConsistentHashRingTest {
+    private static final int OWNERS = 100_000;
+
+    @Test
+    void shouldSpreadOwnersEvenlyOverTheShards() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("shard0", "shard1", "shard2", "shard3"), 160);
+
+        Map<String, Integer> owners = new HashMap<>();
+        for (int i = 0; i < OWNERS; i++) {
+            owners.merge(ring.shardFor("owner-" + i), 1, Integer::sum);
+        }
+
+        assertThat(owners).hasSize(4);
+        assertThat(owners.values()).allSatisfy(count -> assertThat(count).isBetween(OWNERS / 4 * 85 / 100,
+                OWNERS / 4 * 115 / 100));
+    }
+
+    @Test
+    void shouldOnlyMoveOwnersOntoAnAddedShard() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("shard0", "shard1", "shard2"), 160);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("shard0", "shard1", "shard2", "shard3"), 160);
+
+        int moved = 0;
+        for (int i = 0; i < OWNERS; i++) {
+            String owner = "owner-" + i;
+            if (!before.shardFor(owner).equals(after.shardFor(owner))) {
+                assertThat(after.shardFor(owner)).isEqualTo("shard3");
+                moved++;
+            }
+        }
+
+        assertThat(moved).isBetween(OWNERS / 4 * 85 / 100, OWNERS / 4 * 115 / 100);
+    }
+
+    @Test
+    void shouldNotDependOnTheOrderShardsAreListedIn() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("shard0", "shard1", "shard2"), 160);
+        ConsistentHashRing reversed = new ConsistentHashRing(List.of("shard2", "shard1", "shard0"), 160);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(reversed.shardFor("owner-" + i)).isEqualTo(ring.shardFor("owner-" + i));
+        }
+    }
+}
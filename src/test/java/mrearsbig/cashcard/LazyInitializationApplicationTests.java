@@ -0,0 +1,26 @@
+package mrearsbig.cashcard;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs every {@link CashCardApplicationTests} scenario with the {@code lazy}
+ * profile, where beans are only created when first needed.
+ */
+@ActiveProfiles("lazy")
+class LazyInitializationApplicationTests extends CashCardApplicationTests {
+
+	@Autowired
+	ConfigurableApplicationContext applicationContext;
+
+	@Test
+	void shouldStartBackgroundWorkWithoutWaitingForARequest() {
+		Assertions.assertThat(applicationContext.getEnvironment().getProperty("spring.main.lazy-initialization"))
+				.isEqualTo("true");
+		Assertions.assertThat(applicationContext.getBeanFactory().containsSingleton("cashCardChangeCompactor"))
+				.isTrue();
+	}
+}
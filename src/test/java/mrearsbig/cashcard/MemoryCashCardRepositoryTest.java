@@ -0,0 +1,204 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+class MemoryCashCardRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    private CashCardLog log;
+    private MemoryCashCardRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = open(1_000_000);
+        repository.saveAll(List.of(
+                new CashCard(99L, new BigDecimal("123.45"), "sarah1"),
+                new CashCard(100L, new BigDecimal("1.00"), "sarah1"),
+                new CashCard(101L, new BigDecimal("150.00"), "sarah1"),
+                new CashCard(102L, new BigDecimal("200.00"), "kumar2")));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        log.close();
+    }
+
+    @Test
+    void shouldScopeLookupsAndWritesToTheOwner() {
+        assertThat(repository.findByIdAndOwner(99L, "sarah1").amount()).isEqualByComparingTo("123.45");
+        assertThat(repository.findByIdAndOwner(102L, "sarah1")).isNull();
+        assertThat(repository.existsByIdAndOwner(102L, "kumar2")).isTrue();
+
+        assertThat(repository.updateAmountByIdAndOwner(102L, "sarah1", new BigDecimal("1.00"))).isZero();
+        assertThat(repository.deleteByIdAndOwner(102L, "sarah1")).isZero();
+        assertThat(repository.deleteByIdAndOwner(102L, "kumar2")).isEqualTo(1);
+        assertThat(repository.existsById(102L)).isFalse();
+    }
+
+    @Test
+    void shouldAssignIdsAndVersionsLikeTheJdbcRepository() {
+        CashCard created = repository.save(new CashCard(null, new BigDecimal("5.5"), "sarah1"));
+        assertThat(created.id()).isEqualTo(103L);
+        assertThat(created.version()).isZero();
+        assertThat(created.amount()).isEqualTo(new BigDecimal("5.50"));
+
+        CashCard updated = repository.save(new CashCard(created.id(), new BigDecimal("6.00"), "sarah1", 0L));
+        assertThat(updated.version()).isEqualTo(1L);
+
+        assertThatThrownBy(() -> repository.save(new CashCard(created.id(), new BigDecimal("7.00"), "sarah1", 0L)))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(repository.updateAmountByIdAndOwnerAndVersion(created.id(), "sarah1", BigDecimal.TEN, 0L)).isZero();
+        assertThat(repository.updateAmountByIdAndOwnerAndVersion(created.id(), "sarah1", BigDecimal.TEN, 1L))
+                .isEqualTo(1);
+    }
+
+    @Test
+    void shouldPageAnOwnersCardsInEitherOrder() {
+        Page<CashCard> byAmountDesc = repository.findByOwner("sarah1",
+                PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "amount")));
+        assertThat(byAmountDesc.getContent()).extracting(CashCard::id).containsExactly(101L, 99L);
+        assertThat(byAmountDesc.getTotalElements()).isEqualTo(3);
+
+        Page<CashCard> secondPage = repository.findByOwner("sarah1",
+                PageRequest.of(1, 2, Sort.by(Sort.Direction.ASC, "amount")));
+        assertThat(secondPage.getContent()).extracting(CashCard::id).containsExactly(101L);
+
+        Page<CashCard> byOwnerThenAmount = repository.findByOwner("sarah1",
+                PageRequest.of(0, 3, Sort.by("owner").and(Sort.by(Sort.Direction.DESC, "amount"))));
+        assertThat(byOwnerThenAmount.getContent()).extracting(CashCard::id).containsExactly(101L, 99L, 100L);
+
+        assertThat(repository.findByOwner("nobody", PageRequest.of(0, 20)).getContent()).isEmpty();
+    }
+
+    @Test
+    void shouldKeepTheAmountIndexInOrderAcrossUpdates() {
+        repository.creditByIdAndOwner(100L, "sarah1", new BigDecimal("500.00"));
+        assertThat(repository.debitByIdAndOwner(99L, "sarah1", new BigDecimal("1000.00"))).isZero();
+        repository.debitByIdAndOwner(99L, "sarah1", new BigDecimal("123.45"));
+
+        Page<CashCard> page = repository.findByOwner("sarah1", PageRequest.of(0, 3, Sort.by("amount")));
+        assertThat(page.getContent()).extracting(CashCard::id).containsExactly(99L, 101L, 100L);
+        assertThat(page.getContent()).extracting(CashCard::amount)
+                .containsExactly(new BigDecimal("0.00"), new BigDecimal("150.00"), new BigDecimal("501.00"));
+    }
+
+    @Test
+    void shouldPageWithACursorInBothDirections() {
+        Sort.Order ascending = Sort.Order.asc("amount");
+        Slice<CashCard> first = repository.findByOwnerAfter("sarah1", ascending, null, 2);
+        assertThat(first.getContent()).extracting(CashCard::id).containsExactly(100L, 99L);
+        assertThat(first.hasNext()).isTrue();
+
+        Slice<CashCard> second = repository.findByOwnerAfter("sarah1", ascending,
+                CashCardCursor.after(first.getContent().get(1), ascending), 2);
+        assertThat(second.getContent()).extracting(CashCard::id).containsExactly(101L);
+        assertThat(second.hasNext()).isFalse();
+
+        Sort.Order descending = Sort.Order.desc("id");
+        Slice<CashCard> byIdDesc = repository.findByOwnerAfter("sarah1", descending,
+                new CashCardCursor(descending, BigDecimal.ZERO, 101L), 5);
+        assertThat(byIdDesc.getContent()).extracting(CashCard::id).containsExactly(100L, 99L);
+    }
+
+    @Test
+    void shouldStreamAnOwnersCardsInIdOrder() {
+        List<Long> ids = new ArrayList<>();
+        repository.streamByOwner("sarah1", cashCard -> ids.add(cashCard.id()));
+
+        assertThat(ids).containsExactly(99L, 100L, 101L);
+    }
+
+    @Test
+    void shouldRecoverItsStateFromTheLog() throws IOException {
+        repository.updateAmountByIdAndOwner(99L, "sarah1", new BigDecimal("42.00"));
+        repository.deleteByIdAndOwner(100L, "sarah1");
+        log.close();
+
+        repository = open(1_000_000);
+
+        assertThat(repository.count()).isEqualTo(3);
+        assertThat(repository.findByIdAndOwner(99L, "sarah1").amount()).isEqualTo(new BigDecimal("42.00"));
+        assertThat(repository.findByIdAndOwner(99L, "sarah1").version()).isEqualTo(1L);
+        assertThat(repository.existsById(100L)).isFalse();
+        assertThat(repository.save(new CashCard(null, BigDecimal.ONE, "sarah1")).id()).isEqualTo(103L);
+    }
+
+    @Test
+    void shouldRecoverFromASnapshotAndIgnoreATornRecord() throws IOException {
+        log.close();
+        repository = open(1);
+        repository.creditByIdAndOwner(102L, "kumar2", new BigDecimal("0.01"));
+        repository.creditByIdAndOwner(102L, "kumar2", new BigDecimal("0.01"));
+        assertThat(Files.exists(directory.resolve("cashcards.snapshot"))).isTrue();
+        log.close();
+
+        // A write that only half reached the disk before a crash.
+        try (FileChannel channel = FileChannel.open(directory.resolve("cashcards.log"), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 1, 0, 0, 0, 0, 0, 0, 0 }));
+        }
+
+        repository = open(1_000_000);
+
+        assertThat(repository.count()).isEqualTo(4);
+        assertThat(repository.findByIdAndOwner(102L, "kumar2").amount()).isEqualTo(new BigDecimal("200.02"));
+    }
+
+    @Test
+    void shouldMaintainEachOwnersSummary() {
+        assertThat(repository.findSummaryByOwner("sarah1")).isEqualTo(new CashCardSummary("sarah1", 3,
+                new BigDecimal("274.45"), new BigDecimal("1.00"), new BigDecimal("150.00")));
+
+        repository.deleteByIdAndOwner(100L, "sarah1");
+        repository.updateAmountByIdAndOwner(101L, "sarah1", new BigDecimal("5.00"));
+        assertThat(repository.findSummaryByOwner("sarah1")).isEqualTo(new CashCardSummary("sarah1", 2,
+                new BigDecimal("128.45"), new BigDecimal("5.00"), new BigDecimal("123.45")));
+
+        repository.deleteByIdAndOwner(102L, "kumar2");
+        assertThat(repository.findSummaryByOwner("kumar2")).isEqualTo(CashCardSummary.empty("kumar2"));
+        assertThat(repository.findSummaryByOwner("hank-owns-no-cards")).isEqualTo(
+                CashCardSummary.empty("hank-owns-no-cards"));
+    }
+
+    @Test
+    void shouldNotOverflowTheTotalOfLargeAmounts() {
+        BigDecimal largest = new BigDecimal("90000000000000000.00");
+        repository.saveAll(List.of(
+                new CashCard(200L, largest, "rich"),
+                new CashCard(201L, largest, "rich"),
+                new CashCard(202L, largest, "rich")));
+
+        assertThat(repository.findSummaryByOwner("rich").totalAmount())
+                .isEqualByComparingTo(largest.multiply(BigDecimal.valueOf(3)));
+
+        repository.updateAmountByIdAndOwner(201L, "rich", largest.negate());
+        repository.deleteByIdAndOwner(202L, "rich");
+        assertThat(repository.findSummaryByOwner("rich").totalAmount()).isEqualByComparingTo("0.00");
+    }
+
+    private MemoryCashCardRepository open(long snapshotThreshold) {
+        log = new CashCardLog(directory, snapshotThreshold, false);
+        return new MemoryCashCardRepository(log, 2);
+    }
+}
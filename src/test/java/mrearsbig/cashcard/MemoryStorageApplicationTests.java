@@ -0,0 +1,31 @@
+package mrearsbig.cashcard;
+
+import java.math.BigDecimal;
+import java.util.List;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs every {@link CashCardApplicationTests} scenario against the in-memory
+ * storage engine, seeded with the same cards as {@code R__test_data.sql}.
+ */
+@ActiveProfiles("memory")
+@TestPropertySource(properties = "cashcard.memory.directory=")
+class MemoryStorageApplicationTests extends CashCardApplicationTests {
+
+	@TestConfiguration
+	static class TestDataConfig {
+
+		@Bean
+		ApplicationRunner testData(CashCardRepository cashCardRepository) {
+			return args -> cashCardRepository.saveAll(List.of(
+					new CashCard(99L, new BigDecimal("123.45"), "sarah1"),
+					new CashCard(100L, new BigDecimal("1.00"), "sarah1"),
+					new CashCard(101L, new BigDecimal("150.00"), "sarah1"),
+					new CashCard(102L, new BigDecimal("200.00"), "kumar2")));
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability
+class MetricsTests {
+
+    @Autowired
+    TestRestTemplate testRestTemplate;
+
+    @Test
+    void shouldPublishLatencyHistogramsAndRowCountsForPrometheus() {
+        testRestTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards", String.class);
+        testRestTemplate.withBasicAuth("sarah1", "abc123").getForEntity("/cashcards/99", String.class);
+
+        ResponseEntity<String> response = testRestTemplate.getForEntity("/actuator/prometheus", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        assertThat(response.getBody())
+                .contains("cashcard_repository_seconds_bucket{method=\"findByOwner\"")
+                .contains("cashcard_repository_seconds_bucket{method=\"findByIdAndOwner\"")
+                .contains("cashcard_repository_rows_sum{method=\"findByOwner\"}")
+                .contains("cashcard_authentication_seconds_bucket{outcome=\"success\"")
+                .contains("cashcard_authentication_cache_total")
+                .contains("http_server_requests_seconds_bucket");
+    }
+}
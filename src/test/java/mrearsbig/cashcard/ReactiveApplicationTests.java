@@ -0,0 +1,26 @@
+package mrearsbig.cashcard;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs every {@link CashCardApplicationTests} scenario against the reactive
+ * API (WebFlux on Netty, R2DBC on H2).
+ */
+@ActiveProfiles("reactive")
+@TestPropertySource(properties = "spring.main.web-application-type=reactive")
+class ReactiveApplicationTests extends CashCardApplicationTests {
+
+	@Autowired
+	ApplicationContext applicationContext;
+
+	@Test
+	void shouldServeTheApiFromTheReactiveController() {
+		Assertions.assertThat(applicationContext.getBeanNamesForType(ReactiveCashCardController.class)).hasSize(1);
+		Assertions.assertThat(applicationContext.getBeanNamesForType(CashCardController.class)).isEmpty();
+	}
+}
@@ -0,0 +1,59 @@
+package mrearsbig.cashcard;
+
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+
+import net.minidev.json.JSONArray;
+
+/**
+ * Runs every {@link CashCardApplicationTests} scenario against two H2 file
+ * shards. Both are seeded by {@code R__test_data.sql}, so each owner's cards
+ * also sit on the shard that does not own them, as a leftover copy would.
+ */
+@ActiveProfiles("sharded")
+@TestPropertySource(properties = "cashcard.sharding.urls="
+		+ "jdbc:h2:file:${java.io.tmpdir}/cashcard-shards-${random.uuid}/shard0,"
+		+ "jdbc:h2:file:${java.io.tmpdir}/cashcard-shards-${random.uuid}/shard1")
+class ShardedStorageApplicationTests extends CashCardApplicationTests {
+
+	@Autowired
+	ShardRouter shardRouter;
+
+	@Autowired
+	ShardRebalancer shardRebalancer;
+
+	@Test
+	@DirtiesContext
+	void shouldMoveAnOwnerToAnotherShardAndBack() {
+		String home = shardRouter.shardFor("sarah1");
+		String other = home.equals("shard0") ? "shard1" : "shard0";
+
+		Assertions.assertThat(shardRebalancer.move("sarah1", other)).isEqualTo(3);
+		Assertions.assertThat(shardRouter.shardFor("sarah1")).isEqualTo(other);
+		Assertions.assertThat(shardRouter.pins()).isEqualTo(Map.of("sarah1", other));
+		// The home shard keeps only kumar2's copy.
+		Assertions.assertThat(shardRebalancer.layout().cards()).containsEntry(home, 1L).containsEntry(other, 4L);
+
+		ResponseEntity<String> response = testRestTemplate
+				.withBasicAuth("sarah1", "abc123")
+				.getForEntity("/cashcards", String.class);
+		Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		JSONArray ids = documentContext.read("$..id");
+		Assertions.assertThat(ids).containsExactlyInAnyOrder(99, 100, 101);
+
+		Assertions.assertThat(shardRebalancer.rebalance()).containsExactly("sarah1");
+		Assertions.assertThat(shardRouter.shardFor("sarah1")).isEqualTo(home);
+		Assertions.assertThat(shardRouter.pins()).isEmpty();
+	}
+}
@@ -0,0 +1,35 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.threads.virtual.enabled=true")
+class VirtualThreadsApplicationTests {
+
+    @Autowired
+    TestRestTemplate testRestTemplate;
+
+    @Autowired
+    FilterRegistrationBean<ConnectionPoolAdmissionFilter> admissionFilter;
+
+    @Test
+    void shouldServeRequestsOnVirtualThreadsAndReleaseTheirPermits() {
+        int permits = admissionFilter.getFilter().availablePermits();
+        assertThat(permits).isPositive();
+
+        ResponseEntity<String> response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(admissionFilter.getFilter().availablePermits()).isEqualTo(permits);
+    }
+}
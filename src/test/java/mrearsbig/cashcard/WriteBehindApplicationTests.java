@@ -0,0 +1,166 @@
+package mrearsbig.cashcard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "cashcard.write-behind.enabled=true",
+        "cashcard.write-behind.journal=${java.io.tmpdir}/cashcard-test-${random.uuid}/cashcards.journal",
+        "cashcard.write-behind.apply-timeout=1s",
+        "cashcard.write-behind.max-attempts=100" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class WriteBehindApplicationTests {
+
+    @Autowired
+    TestRestTemplate testRestTemplate;
+
+    @Autowired
+    CashCardWriteBehind writeBehind;
+
+    @Autowired
+    CashCardRepository cashCardRepository;
+
+    @Autowired
+    CashCardJournal journal;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void shouldReadACreatedCashCardBeforeItIsApplied() {
+        URI location = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForLocation("/cashcards", new CashCard(null, new BigDecimal("250.00"), null));
+
+        ResponseEntity<String> response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity(location, String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        DocumentContext documentContext = JsonPath.parse(response.getBody());
+        assertThat(documentContext.read("$.amount", Double.class)).isEqualTo(250.00);
+
+        // Another owner must not see a pending card either.
+        ResponseEntity<String> foreign = testRestTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .getForEntity(location, String.class);
+        assertThat(foreign.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+        writeBehind.awaitApplied();
+        Long id = documentContext.read("$.id", Long.class);
+        assertThat(cashCardRepository.findByIdAndOwner(id, "sarah1").amount()).isEqualByComparingTo("250.00");
+    }
+
+    @Test
+    void shouldReadAnUpdateBeforeItIsApplied() {
+        ResponseEntity<Void> putResponse = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT,
+                        new HttpEntity<>(new CashCard(null, new BigDecimal("19.99"), null)), Void.class);
+        assertThat(putResponse.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        ResponseEntity<String> response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        assertThat(JsonPath.parse(response.getBody()).read("$.amount", Double.class)).isEqualTo(19.99);
+
+        writeBehind.awaitApplied();
+        assertThat(cashCardRepository.findByIdAndOwner(99L, "sarah1").amount()).isEqualByComparingTo("19.99");
+    }
+
+    @Test
+    void shouldNotUpdateOrDeleteACashCardOwnedBySomeoneElse() {
+        ResponseEntity<Void> putResponse = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/102", HttpMethod.PUT,
+                        new HttpEntity<>(new CashCard(null, new BigDecimal("1.00"), null)), Void.class);
+        assertThat(putResponse.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+        ResponseEntity<Void> deleteResponse = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/102", HttpMethod.DELETE, null, Void.class);
+        assertThat(deleteResponse.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void shouldNotReadADeletedCashCardBeforeTheDeleteIsApplied() {
+        ResponseEntity<Void> deleteResponse = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.DELETE, null, Void.class);
+        assertThat(deleteResponse.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        ResponseEntity<String> response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+        // A second delete of the same card already sees it gone.
+        ResponseEntity<Void> secondDelete = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.DELETE, null, Void.class);
+        assertThat(secondDelete.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void shouldApplyPendingWritesBeforeACreditRuns() {
+        testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT,
+                        new HttpEntity<>(new CashCard(null, new BigDecimal("10.00"), null)), Void.class);
+
+        ResponseEntity<Void> creditResponse = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForEntity("/cashcards/99/credit", new CashCard(null, new BigDecimal("5.00"), null), Void.class);
+        assertThat(creditResponse.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        ResponseEntity<String> response = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        assertThat(JsonPath.parse(response.getBody()).read("$.amount", Double.class)).isEqualTo(15.00);
+    }
+
+    @Test
+    void shouldFailFastWhileAJournalEntryCannotBeAppliedAndSkipItEventually() throws Exception {
+        // An entry of an unknown type fails every time it is applied.
+        journal.awaitDurable(journal.append((byte) 9, 99L, 0L, "sarah1"));
+        List<CashCard> newCashCards = List.of(new CashCard(null, new BigDecimal("10.00"), null));
+
+        ResponseEntity<String> response = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> testRestTemplate
+                        .withBasicAuth("sarah1", "abc123")
+                        .postForEntity("/cashcards/batch", newCashCards, String.class));
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+        // After max-attempts, the entry is skipped and writes go through again.
+        Counter skipped = meterRegistry.get("cashcard.write-behind.skipped").counter();
+        long deadline = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+        while (skipped.count() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(skipped.count()).isEqualTo(1);
+
+        ResponseEntity<String> retry = testRestTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForEntity("/cashcards/batch", newCashCards, String.class);
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cashCardRepository.findByIdAndOwner(99L, "sarah1")).isNotNull();
+    }
+}
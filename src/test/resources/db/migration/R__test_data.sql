@@ -0,0 +1,8 @@
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (99, 123.45, 'sarah1');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (100, 1.00, 'sarah1');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (101, 150.00, 'sarah1');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (102, 200.00, 'kumar2');
+
+INSERT INTO CASH_CARD_USER(USERNAME, PASSWORD, ROLES) VALUES ('sarah1', '$2b$10$EcrqOCUiXefLCZSDmsWZsOfJyL97tcQFUZ2k3TOpRFLTULOXxUTAa', 'CARD-OWNER');
+INSERT INTO CASH_CARD_USER(USERNAME, PASSWORD, ROLES) VALUES ('hank-owns-no-cards', '$2b$10$S/0R8I6q28rVG4wOVk1ZO.7fQP5tQhkNbWf7oNyo3CA46YF8w8ysC', 'NON-OWNER');
+INSERT INTO CASH_CARD_USER(USERNAME, PASSWORD, ROLES) VALUES ('kumar2', '$2b$10$zCsz.zvl.brJodvY1sIqrOoWHqHrIMx/l3XSqs8IQdL/jpOo49Hd6', 'CARD-OWNER');
\ No newline at end of file